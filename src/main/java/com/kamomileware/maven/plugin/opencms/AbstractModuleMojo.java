@@ -20,6 +20,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Base class for opencms-module maven plugin mojos.
@@ -121,6 +122,65 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
   @Parameter (property="manifest.encoding")
   protected String manifestEncoding;
 
+  /**
+   * Number of manifest file entries kept in memory before spilling them to a
+   * temporary file, for modules too large to build their manifest in memory.
+   * <b>0, the default, keeps every entry in memory</b>
+   */
+  @Parameter (property="manifest.spillThreshold", defaultValue="0")
+  protected int manifestSpillThreshold;
+
+  /**
+   * Whether to keep the rendered manifest file entries in the work directory,
+   * so later builds only render the entries of the changed resources.
+   * <b>disabled by default</b>
+   */
+  @Parameter (property="manifest.fragments", defaultValue="false")
+  protected boolean manifestFragments;
+
+  /**
+   * Whether files with the same content as a previous one are added to the
+   * manifest as its siblings, so a single copy is packaged.
+   * <b>disabled by default</b>
+   */
+  @Parameter (property="manifest.dedupSiblings", defaultValue="false")
+  protected boolean dedupSiblings;
+
+  /**
+   * Whether the dependency jars are added to the module archive straight
+   * from the local repository, without copying them to the exploded module.
+   * <b>disabled by default</b>
+   */
+  @Parameter (property="module.streamLibraries", defaultValue="false")
+  protected boolean streamLibraries;
+
+  /**
+   * What to do with classes found in several jars of the module libraries:
+   * <code>ignore</code>, <code>warn</code> or <code>fail</code>, which fails
+   * the build when their copies differ.
+   * <b>warn by default</b>
+   */
+  @Parameter (property="module.duplicateClasses", defaultValue="warn")
+  protected String duplicateClasses = "warn";
+
+  /**
+   * Comma separated digest algorithms, as <code>SHA-256,SHA-1</code>, whose
+   * digests of the module archive and the classes jar are written next to
+   * them, as <code>module.zip.sha256</code>, and attached.
+   * <b>none by default</b>
+   */
+  @Parameter (property="module.digestAlgorithms")
+  protected String digestAlgorithms;
+
+  /**
+   * Whether <code>manifest.xml</code> is the first entry of the module
+   * archive, followed by the resources in the order the manifest lists them,
+   * so the archive can be imported in a single forward pass.
+   * <b>enabled by default</b>
+   */
+  @Parameter (property="module.manifestFirst", defaultValue="true")
+  protected boolean manifestFirst = true;
+
   /**
    * Folder for storing manifest descriptors
    */
@@ -223,6 +283,15 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
   @Parameter
   protected List<String> nonFilteredFileExtensions;
 
+  /**
+   * OpenCms resource types by file extension, overriding the default ones.
+   * Standard types (<tt>plain</tt>, <tt>image</tt>, <tt>binary</tt>...) as well
+   * as custom types are allowed, i.e.
+   * <code>&lt;extensionTypes&gt;&lt;svg&gt;image&lt;/svg&gt;&lt;xml&gt;xmlcontent&lt;/xml&gt;&lt;/extensionTypes&gt;</code>
+   */
+  @Parameter
+  protected Map<String, String> extensionTypes;
+
   /**
    *
    */
@@ -389,6 +458,65 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
     this.descriptorsN2AApply = descriptorsN2AApply;
   }
 
+  public int getManifestSpillThreshold() {
+    return manifestSpillThreshold;
+  }
+
+  public void setManifestSpillThreshold(int manifestSpillThreshold) {
+    this.manifestSpillThreshold = manifestSpillThreshold;
+  }
+
+  public boolean isManifestFragments() {
+    return manifestFragments;
+  }
+
+  public void setManifestFragments(boolean manifestFragments) {
+    this.manifestFragments = manifestFragments;
+  }
+
+  public boolean isDedupSiblings() {
+    return dedupSiblings;
+  }
+
+  public void setDedupSiblings(boolean dedupSiblings) {
+    this.dedupSiblings = dedupSiblings;
+  }
+
+  public boolean isStreamLibraries() {
+    return streamLibraries;
+  }
+
+  public void setStreamLibraries(boolean streamLibraries) {
+    this.streamLibraries = streamLibraries;
+  }
+
+  public String getDuplicateClasses() {
+    return duplicateClasses;
+  }
+
+  public void setDuplicateClasses(String duplicateClasses) {
+    this.duplicateClasses = duplicateClasses;
+  }
+
+  public String[] getDigestAlgorithms() {
+    if (StringUtils.isEmpty(digestAlgorithms)) {
+      return new String[0];
+    }
+    return StringUtils.stripAll(StringUtils.split(digestAlgorithms, ","));
+  }
+
+  public void setDigestAlgorithms(String digestAlgorithms) {
+    this.digestAlgorithms = digestAlgorithms;
+  }
+
+  public boolean isManifestFirst() {
+    return manifestFirst;
+  }
+
+  public void setManifestFirst(boolean manifestFirst) {
+    this.manifestFirst = manifestFirst;
+  }
+
   public PlainEncodingConfig getDescriptorsN2AConfig() {
     return descriptorsN2AConfig;
   }
@@ -497,6 +625,14 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
     this.nonFilteredFileExtensions = nonFilteredFileExtensions;
   }
 
+  public Map<String, String> getExtensionTypes() {
+    return extensionTypes;
+  }
+
+  public void setExtensionTypes(Map<String, String> extensionTypes) {
+    this.extensionTypes = extensionTypes;
+  }
+
   public ArtifactFactory getArtifactFactory() {
     return this.artifactFactory;
   }
@@ -1,29 +1,21 @@
 package com.kamomileware.maven.plugin.opencms;
 
-import java.io.File;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.TimeZone;
 
+import com.kamomileware.maven.plugin.opencms.util.CmsUUID;
+import com.kamomileware.maven.plugin.opencms.util.ManifestDateFormat;
 import com.kamomileware.maven.plugin.opencms.util.SimpleBeanLoader;
 
 
 public class ManifestBean {
 
-	final static public DateFormat dateFormat = new SimpleDateFormat(
-			"EEE, d MMM yyyy HH:mm:ss z", Locale.ENGLISH);
-
-	static {
-		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-	}
+	final static public ManifestDateFormat dateFormat = new ManifestDateFormat();
 
 	ManifestInfoBean info;
 	ModuleInfoBean module;
@@ -63,6 +55,14 @@ public class ManifestBean {
 		this.accounts = accounts;
 	}
 
+	public String getCreatedate() {
+		return info.createdate;
+	}
+
+	public void setCreatedate(String createdate) {
+		info.createdate = createdate;
+	}
+
 	public void setFiles(List<ResourceFileBean> files) {
 		this.files = files;
 	}
@@ -111,8 +111,11 @@ public class ManifestBean {
 		String source;
 		String destination;
 		String type;
-		String uuidstructure;
-		String uuidresource;
+		// UUIDs kept as their two 64 bit halves, formatted only when rendered
+		long uuidstructureMsb;
+		long uuidstructureLsb;
+		long uuidresourceMsb;
+		long uuidresourceLsb;
 		String datelastmodified;
 		String userlastmodified;
 		String datecreated;
@@ -147,20 +150,22 @@ public class ManifestBean {
 			this.type = type;
 		}
 		
-		public String getUuidstructure() {
-			return uuidstructure;
+		public CmsUUID getUuidstructure() {
+			return toUUID(uuidstructureMsb, uuidstructureLsb);
 		}
 		
-		public void setUuidstructure(String uuidstructure) {
-			this.uuidstructure = uuidstructure;
+		public void setUuidstructure(CmsUUID uuidstructure) {
+			this.uuidstructureMsb = uuidstructure != null ? uuidstructure.getMostSignificantBits() : 0L;
+			this.uuidstructureLsb = uuidstructure != null ? uuidstructure.getLeastSignificantBits() : 0L;
 		}
 		
-		public String getUuidresource() {
-			return uuidresource;
+		public CmsUUID getUuidresource() {
+			return toUUID(uuidresourceMsb, uuidresourceLsb);
 		}
 		
-		public void setUuidresource(String uuidresource) {
-			this.uuidresource = uuidresource;
+		public void setUuidresource(CmsUUID uuidresource) {
+			this.uuidresourceMsb = uuidresource != null ? uuidresource.getMostSignificantBits() : 0L;
+			this.uuidresourceLsb = uuidresource != null ? uuidresource.getLeastSignificantBits() : 0L;
 		}
 		
 		public String getDatelastmodified() {
@@ -246,78 +251,97 @@ public class ManifestBean {
 		public boolean isEmptyRelations() {
 			return this.relations.isEmpty();
 		}
-	}
-
-	static public enum Filetype {
-		image, jsp, plain, binary, folder, downloadgallery, imagegallery, linkgallery, custom, sibling;
-		
-		private String custonName;
 		
-		public static Filetype newCustomFiletype(String name) {
-			try {
-				return Filetype.valueOf(name);
-			} catch (IllegalArgumentException e) {
-				Filetype custom = Filetype.custom;
-				custom.setCustonName(name);
-				return custom;
+		/**
+		 * 64 bit FNV-1a hash of everything the <code>file</code> template renders
+		 * of the bean, in rendering order, so a previously rendered fragment can be
+		 * reused without rendering the bean again.
+		 */
+		public long fingerprint() {
+			long h = FNV_OFFSET_BASIS;
+			h = fnv(h, source);
+			h = fnv(h, destination);
+			h = fnv(h, type);
+			h = fnv(h, uuidstructureMsb);
+			h = fnv(h, uuidstructureLsb);
+			h = fnv(h, uuidresourceMsb);
+			h = fnv(h, uuidresourceLsb);
+			h = fnv(h, datelastmodified);
+			h = fnv(h, userlastmodified);
+			h = fnv(h, datecreated);
+			h = fnv(h, usercreated);
+			h = fnv(h, flags);
+			h = fingerprintProperties(h, properties);
+			h = fingerprintProperties(h, sharedProperties);
+			if (relations != null) {
+				for (CategoryBean category : relations) {
+					h = fnv(h, category.idMsb);
+					h = fnv(h, category.idLsb);
+					h = fnv(h, category.path);
+				}
 			}
+			h = fnv(h, -1L);
+			if (acl != null) {
+				for (Entry<String, PermissionSet> entry : acl) {
+					h = fnv(h, entry.getKey());
+					h = fnv(h, entry.getValue().m_flags);
+					h = fnv(h, entry.getValue().m_allowed);
+					h = fnv(h, entry.getValue().m_denied);
+				}
+			}
+			return h;
 		}
 		
-		public static Filetype calculateType(File file) {
-			String[] names = file.getName().split("\\.");
-			String extension = names.length > 1
-			? names[names.length - 1]
-			        : names[0];
-			return getFiletypeByExtension(extension);
-		}
-		
-		public static Filetype getFiletypeByExtension(String extension) {
-			try {
-				if (extension.equals("class")) {
-					extension = "clas";
-				}
-				switch (Extension.valueOf(extension.toLowerCase())) {
-					case jpg :
-					case jpeg :
-					case png :
-					case gif :
-					case bmp :
-					case tif :
-					case tiff :
-						return Filetype.image;
-					case jsp :
-						return Filetype.jsp;
-					case pdf :
-					case zip :
-					case clas :
-					case ppt :
-					case doc :
-					case xls :
-					case jar :
-					case db :
-						return Filetype.binary;
-					case sibling :
-						return Filetype.sibling;
-					default :
-						return Filetype.plain;
+		private static long fingerprintProperties(long h, Set<Entry<String, String>> entries) {
+			if (entries != null) {
+				for (Entry<String, String> entry : entries) {
+					h = fnv(h, entry.getKey());
+					h = fnv(h, entry.getValue());
 				}
-			} catch (IllegalArgumentException e) {
-				return Filetype.plain;
 			}
+			return fnv(h, -1L);
 		}
-		
-		public void setCustonName(String custonName) {
-			this.custonName = custonName;
+	}
+	
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	static long fnv(long h, String s) {
+		if (s == null) {
+			return fnv(h, -1L);
 		}
-
-		public String getCustonName() {
-			return custonName;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			h = (h ^ (c & 0xff)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
 		}
-
-		static public enum Extension {
-			html, htm, css, xml, xsl, xsd, dtd, txt, js, properties, jpg, jpeg, png, gif, tiff, tif, bmp, jsp, pdf, zip, ppt, doc, xls, db, jar, clas, sibling;
-			
+		// length terminated, so consecutive strings can't shift into each other
+		return fnv(h, (long) s.length());
+	}
+	
+	static long fnv(long h, long v) {
+		for (int i = 0; i < 64; i += 8) {
+			h = (h ^ ((v >>> i) & 0xff)) * FNV_PRIME;
 		}
+		return h;
+	}
+
+	/**
+	 * Rebuilds the UUID stored as two longs, <code>null</code> for the null UUID
+	 * which stands for a missing value.
+	 */
+	static CmsUUID toUUID(long msb, long lsb) {
+		return msb == 0L && lsb == 0L ? null : new CmsUUID(msb, lsb);
+	}
+
+	/**
+	 * The kinds of resources the manifest generation deals with. Resources of
+	 * other OpenCms types are {@link #custom}, their type name being resolved by
+	 * {@link com.kamomileware.maven.plugin.opencms.util.FiletypeRegistry}.
+	 */
+	static public enum Filetype {
+		image, jsp, plain, binary, folder, downloadgallery, imagegallery, linkgallery, custom, sibling;
 	}
 	
 	static public class PermissionSet {
@@ -341,12 +365,14 @@ public class ManifestBean {
 		int m_allowed = 0;
 		int m_denied = 0;
 		String m_flags = "0";
+		boolean m_frozen = false;
 		
 		public final int getAllowed() {
 			return m_allowed;
 		}
 		
 		public final void setAllowed(int mAllowed) {
+			checkNotFrozen();
 			m_allowed = mAllowed;
 		}
 		
@@ -355,6 +381,7 @@ public class ManifestBean {
 		}
 		
 		public final void setDenied(int mDenied) {
+			checkNotFrozen();
 			m_denied = mDenied;
 		}
 		
@@ -363,9 +390,31 @@ public class ManifestBean {
 		}
 		
 		public final void setFlags(String mFlags) {
+			checkNotFrozen();
 			m_flags = mFlags;
 		}
 		
+		/**
+		 * Makes the permission set read only, as it is shared by the access
+		 * entries of several resources.
+		 * 
+		 * @return this permission set
+		 */
+		public final PermissionSet freeze() {
+			m_frozen = true;
+			return this;
+		}
+		
+		public final boolean isFrozen() {
+			return m_frozen;
+		}
+		
+		private void checkNotFrozen() {
+			if (m_frozen) {
+				throw new UnsupportedOperationException("Shared permission set");
+			}
+		}
+		
 		public PermissionSet(String permissionString) {
 			init(permissionString, "0");
 		}
@@ -375,6 +424,7 @@ public class ManifestBean {
 		}
 		
 		public void init(String permissionString, String flags) {
+			checkNotFrozen();
 			m_allowed = 0;
 			m_denied = 0;
 			m_flags = flags;
@@ -439,16 +489,33 @@ public class ManifestBean {
 		}
 	}
 	
-	static public class CategoryBean {
-		String id;
+	/**
+	 * A category relation, ordered by path so the relations of a file are
+	 * always rendered in the same order.
+	 */
+	static public class CategoryBean implements Comparable<CategoryBean> {
+		long idMsb;
+		long idLsb;
 		String path;
 		
-		public String getId() {
-			return id;
+		public int compareTo(CategoryBean other) {
+			int result = path.compareTo(other.path);
+			if (result == 0) {
+				result = idMsb < other.idMsb ? -1 : idMsb == other.idMsb ? 0 : 1;
+			}
+			if (result == 0) {
+				result = idLsb < other.idLsb ? -1 : idLsb == other.idLsb ? 0 : 1;
+			}
+			return result;
+		}
+		
+		public CmsUUID getId() {
+			return toUUID(idMsb, idLsb);
 		}
 		
-		public void setId(String id) {
-			this.id = id;
+		public void setId(CmsUUID id) {
+			this.idMsb = id != null ? id.getMostSignificantBits() : 0L;
+			this.idLsb = id != null ? id.getLeastSignificantBits() : 0L;
 		}
 		
 		public String getPath() {
@@ -460,4 +527,4 @@ public class ManifestBean {
 		}
 }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
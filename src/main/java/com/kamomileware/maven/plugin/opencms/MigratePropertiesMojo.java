@@ -0,0 +1,143 @@
+package com.kamomileware.maven.plugin.opencms;
+
+import com.kamomileware.maven.plugin.opencms.util.ManifestUtils;
+import com.kamomileware.maven.plugin.opencms.util.SidecarProperties;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Converts the per resource <code>__properties</code> sidecar files of the
+ * module sources (<code>moduleSourceDirectory</code> and
+ * <code>moduleResources</code>) to the consolidated per directory
+ * <code>_directory.properties</code> and <code>_directory.acl</code> files,
+ * merging them with any consolidated entries already there. The files are
+ * read in the encoding the manifest generation uses for them. The per resource
+ * files are kept, unless <code>keepSidecars</code> is disabled: they are then
+ * deleted once the written file has been read back and found equal.
+ *
+ * @author jagarcia
+ */
+@Mojo(name = "migrate-properties", requiresProject = true)
+public class MigratePropertiesMojo extends AbstractModuleMojo {
+
+  /**
+   * Whether to keep the per resource sidecar files after migrating them.
+   * <b>enabled by default</b>
+   */
+  @Parameter (property = "keepSidecars", defaultValue = "true")
+  protected boolean keepSidecars = true;
+
+  // encoding of the sidecar files, null for ISO-8859-1
+  private Charset charset;
+
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    charset = isDescriptorsN2AApply() ? ManifestUtils.toCharset(getDescriptorsEncoding()) : null;
+    List<File> roots = new ArrayList<File>();
+    roots.add(moduleSourceDirectory);
+    if (moduleResources != null) {
+      for (ModuleResource resource : moduleResources) {
+        roots.add(new File(resource.getDirectory()));
+      }
+    }
+
+    int migrated = 0;
+    try {
+      for (File root : roots) {
+        if (root.isDirectory()) {
+          migrated += migrateTree(root);
+        }
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Error migrating sidecar properties", e);
+    }
+    getLog().info((isDryRun() ? "Would migrate " : "Migrated ") + migrated + " sidecar files");
+  }
+
+  private int migrateTree(File directory) throws IOException, MojoExecutionException {
+    int migrated = 0;
+    File[] children = directory.listFiles();
+    if (children == null) {
+      return 0;
+    }
+    for (File child : children) {
+      if (!child.isDirectory()) {
+        continue;
+      }
+      if (SidecarProperties.PROPERTIES_DIR_NAME.equals(child.getName())) {
+        migrated += migrateSidecarDirectory(child, SidecarProperties.PROPERTIES_EXT);
+        migrated += migrateSidecarDirectory(child, SidecarProperties.ACCESSCONTROL_EXT);
+      } else {
+        migrated += migrateTree(child);
+      }
+    }
+    return migrated;
+  }
+
+  /**
+   * Merges the per resource files with the given extension into the
+   * consolidated file of the directory, the per resource values winning.
+   */
+  private int migrateSidecarDirectory(File sidecarDir, String extension) throws IOException, MojoExecutionException {
+    File consolidatedFile = new File(sidecarDir, SidecarProperties.DIRECTORY_NAME + extension);
+    List<File> sidecars = new ArrayList<File>();
+    File[] files = sidecarDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isFile() && file.getName().endsWith(extension) && !file.equals(consolidatedFile)) {
+          sidecars.add(file);
+        }
+      }
+    }
+    if (sidecars.isEmpty()) {
+      return 0;
+    }
+
+    Map<String, Properties> byName = consolidatedFile.isFile() ?
+        SidecarProperties.readConsolidated(consolidatedFile, charset) : new HashMap<String, Properties>();
+    for (File sidecar : sidecars) {
+      String name = sidecar.getName().substring(0, sidecar.getName().length() - extension.length());
+      Properties props = byName.get(name);
+      if (props == null) {
+        props = new Properties();
+        byName.put(name, props);
+      }
+      ManifestUtils.loadProperties(sidecar, charset, props);
+    }
+    // resources without entries have no key in the consolidated file
+    for (Iterator<Properties> it = byName.values().iterator(); it.hasNext();) {
+      if (it.next().isEmpty()) {
+        it.remove();
+      }
+    }
+
+    getLog().info((isDryRun() ? "Would write [" : "Writing [") + consolidatedFile + "] from " + sidecars.size() + " files");
+    if (!isDryRun()) {
+      SidecarProperties.writeConsolidated(consolidatedFile, byName);
+      if (!keepSidecars) {
+        // nothing is deleted unless the written file holds every migrated value
+        if (!byName.equals(SidecarProperties.readConsolidated(consolidatedFile, charset))) {
+          throw new MojoExecutionException("[" + consolidatedFile + "] does not read back as written, keeping "
+              + sidecars.size() + " sidecar files");
+        }
+        for (File sidecar : sidecars) {
+          if (!sidecar.delete()) {
+            getLog().warn("Unable to delete [" + sidecar + "]");
+          }
+        }
+      }
+    }
+    return sidecars.size();
+  }
+}
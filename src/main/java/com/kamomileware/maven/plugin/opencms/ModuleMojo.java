@@ -1,8 +1,12 @@
 package com.kamomileware.maven.plugin.opencms;
 
 import com.kamomileware.maven.plugin.opencms.packaging.*;
+import com.kamomileware.maven.plugin.opencms.util.ArchiveDigests;
 import com.kamomileware.maven.plugin.opencms.util.ClassesPackager;
+import com.kamomileware.maven.plugin.opencms.util.FiletypeRegistry;
+import com.kamomileware.maven.plugin.opencms.util.ManifestSnapshot;
 import com.kamomileware.maven.plugin.opencms.util.ModuleStructure;
+import com.kamomileware.maven.plugin.opencms.util.TextEncodingDetector;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.archiver.MavenArchiver;
 import org.apache.maven.artifact.Artifact;
@@ -21,11 +25,19 @@ import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.jar.JarArchiver;
 import org.codehaus.plexus.archiver.jar.ManifestException;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.components.io.resources.PlexusIoFileResource;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.SelectorUtils;
 import org.codehaus.plexus.util.StringUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
@@ -108,6 +120,11 @@ public class ModuleMojo extends AbstractModuleMojo {
   @Component
 	private MavenProjectHelper projectHelper;
 
+	/**
+	 * The context of the last exploded module build.
+	 */
+	private ModulePackagingContext packagingContext;
+
 	/**
 	 * Executes the ModuleMojo on the current project.
 	 *
@@ -163,7 +180,13 @@ public class ModuleMojo extends AbstractModuleMojo {
 		getLog().debug("Excluding " + Arrays.asList(getPackagingExcludes()) + " from the generated webapp archive.");
 		getLog().debug("Including " + Arrays.asList(getPackagingIncludes()) + " in the generated webapp archive.");
 
-		moduleArchiver.addDirectory(getModuleDirectory(), getPackagingIncludes(), getPackagingExcludes());
+		String[] excludes = getPackagingExcludes();
+		if (!packagingContext.getArchiveExclusions().isEmpty()) {
+			List<String> allExcludes = new ArrayList<String>(Arrays.asList(excludes));
+			allExcludes.addAll(packagingContext.getArchiveExclusions());
+			excludes = allExcludes.toArray(new String[allExcludes.size()]);
+		}
+		addModuleFiles(getPackagingIncludes(), excludes);
 
 		final File manifestXmlFile = new File(getModuleDirectory(), MANIFEST_NAME);
 		if (!manifestXmlFile.exists()) {
@@ -179,14 +202,54 @@ public class ModuleMojo extends AbstractModuleMojo {
 
 		// create archive
 		archiver.createArchive(getProject(), getArchive());
+		// the archiver opens the file itself and seeks back to complete the
+		// entries, so the digests are computed from the file just written,
+		// while it's still cached
+		final ArchiveDigests moduleDigests = createDigests();
+		if (moduleDigests != null) {
+			moduleDigests.update(moduleFile);
+			moduleDigests.writeSidecars(moduleFile);
+			attachDigests(moduleFile, "zip", this.classifier);
+		}
 
 		// create the classes to be attached if necessary
+		ArchiveDigests classesDigests = null;
 		ClassesPackager packager = new ClassesPackager();
 		final File classesDirectory = getClassesDirectory();
 		if (classesDirectory.exists()) {
-			getLog().info("Packaging classes");
-			packager.packageClasses(classesDirectory, getTargetClassesFile(), getModuleArchiver(), getProject(), getArchive());
-			projectHelper.attachArtifact(getProject(), "jar", getClassesClassifier(), getTargetClassesFile());
+			final File targetClassesFile = getTargetClassesFile();
+			final File classesArchive = packagingContext.getClassesArchive();
+			final File stampFile = ClassesPackager.getStampFile(getWorkDirectory(), targetClassesFile);
+			if (classesArchive != null) {
+				// the jar of the lib directory is the same archive
+				if (targetClassesFile.length() != classesArchive.length()
+						|| targetClassesFile.lastModified() != classesArchive.lastModified()) {
+					getLog().info("Copying classes archive");
+					classesDigests = createDigests();
+					copyClassesArchive(classesArchive, targetClassesFile, classesDigests);
+				}
+			} else if (packager.isUpToDate(classesDirectory, targetClassesFile, getProject(), getArchive(), stampFile)) {
+				getLog().info("Classes archive is up to date");
+			} else {
+				getLog().info("Packaging classes");
+				packager.packageClasses(classesDirectory, targetClassesFile, getModuleArchiver(), getProject(), getArchive(), stampFile);
+				classesDigests = createDigests();
+				if (classesDigests != null) {
+					classesDigests.update(targetClassesFile);
+				}
+			}
+			projectHelper.attachArtifact(getProject(), "jar", getClassesClassifier(), targetClassesFile);
+			if (classesDigests == null && !hasDigests(targetClassesFile)) {
+				// unchanged, but the digests of the previous build are missing
+				classesDigests = createDigests();
+				if (classesDigests != null) {
+					classesDigests.update(targetClassesFile);
+				}
+			}
+			if (classesDigests != null) {
+				classesDigests.writeSidecars(targetClassesFile);
+			}
+			attachDigests(targetClassesFile, "jar", getClassesClassifier());
 		}
 
 		String classifier = this.classifier;
@@ -202,6 +265,219 @@ public class ModuleMojo extends AbstractModuleMojo {
 		}
 	}
 
+	/**
+	 * Creates the digests of the configured algorithms.
+	 *
+	 * @return the digests or <tt>null</tt> if no algorithm is configured
+	 * @throws MojoExecutionException
+	 *             if an algorithm is not available
+	 */
+	private ArchiveDigests createDigests() throws MojoExecutionException {
+		final String[] algorithms = getDigestAlgorithms();
+		if (algorithms.length == 0) {
+			return null;
+		}
+		try {
+			return new ArchiveDigests(algorithms);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException("Invalid digestAlgorithms[" + digestAlgorithms + "]: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Whether the sidecar files of every configured digest of an archive
+	 * exist.
+	 */
+	private boolean hasDigests(File archive) {
+		for (String algorithm : getDigestAlgorithms()) {
+			if (!ArchiveDigests.getSidecar(archive, algorithm).isFile()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Attaches the sidecar files of the configured digests of an archive.
+	 */
+	private void attachDigests(File archive, String type, String classifier) {
+		for (String algorithm : getDigestAlgorithms()) {
+			projectHelper.attachArtifact(getProject(), type + "." + ArchiveDigests.getExtension(algorithm), classifier,
+					ArchiveDigests.getSidecar(archive, algorithm));
+		}
+	}
+
+	/**
+	 * Copies the classes jar of the lib directory to the attached one,
+	 * computing its digests on the way.
+	 */
+	private void copyClassesArchive(File classesArchive, File targetClassesFile, ArchiveDigests digests) throws IOException {
+		if (digests == null) {
+			FileUtils.copyFile(classesArchive, targetClassesFile);
+		} else {
+			final InputStream in = new FileInputStream(classesArchive);
+			try {
+				final OutputStream out = digests.tee(new FileOutputStream(targetClassesFile));
+				try {
+					IOUtil.copy(in, out, 65536);
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		}
+		targetClassesFile.setLastModified(classesArchive.lastModified());
+	}
+
+	/**
+	 * Adds the files of the module directory to the module archive. The
+	 * module structure already knows every file the packaging tasks put
+	 * there, so the directory isn't scanned again: the registered paths are
+	 * matched against the includes and excludes and added with the modes the
+	 * scan would have given them. Each directory holding an entry is added
+	 * before it, as the scan listed it, along with the registered
+	 * directories. The generated manifest is not registered, so it's added
+	 * as well, and so are the files added to the archive by the packaging
+	 * tasks.
+	 * <p>
+	 * Unless <tt>manifestFirst</tt> is disabled, <tt>manifest.xml</tt> is the
+	 * first entry and the files follow in the order the manifest lists them,
+	 * so the module can be imported in a single forward pass.
+	 * </p>
+	 *
+	 * @param includes
+	 *            the packaging includes
+	 * @param excludes
+	 *            the packaging excludes
+	 * @throws ArchiverException
+	 *             if a file could not be added
+	 */
+	private void addModuleFiles(String[] includes, String[] excludes) throws ArchiverException, IOException {
+		final File moduleDirectory = getModuleDirectory();
+		final Set<String> paths = new LinkedHashSet<String>();
+		paths.add(MANIFEST_NAME);
+		for (Iterator<String> it = packagingContext.getModuleStructure().getFullStructure().iterator(); it.hasNext();) {
+			paths.add(it.next());
+		}
+
+		final String[] includePatterns = normalizePatterns(includes);
+		// the default excludes the archiver applied when adding the directory
+		final List<String> allExcludes = new ArrayList<String>(Arrays.asList(excludes));
+		allExcludes.addAll(Arrays.asList(FileUtils.getDefaultExcludes()));
+		final String[] excludePatterns = normalizePatterns(allExcludes.toArray(new String[allExcludes.size()]));
+		final Map<String, File> entries = new LinkedHashMap<String, File>();
+		final List<String> missing = new ArrayList<String>();
+		for (String path : paths) {
+			if (!isIncluded(path, includePatterns, excludePatterns)) {
+				continue;
+			}
+			final File file = new File(moduleDirectory, path);
+			if (file.exists()) {
+				entries.put(path, file);
+			} else if (!MANIFEST_NAME.equals(path) && !packagingContext.getArchiveFiles().containsKey(path)
+					&& !new File(getWorkDirectory(), path).isFile()) {
+				// files registered for the work directory or streamed are not
+				// in the module directory, any other is registered wrong
+				missing.add(path);
+			}
+		}
+		if (!missing.isEmpty()) {
+			getLog().warn("Registered files not found in the module directory, left out of the module archive: " + missing);
+		}
+		getLog().debug("Adding " + entries.size() + " registered files of " + paths.size() + " to the module archive.");
+		if (!packagingContext.getArchiveFiles().isEmpty()) {
+			// jars are already compressed, store them as they are
+			moduleArchiver.setRecompressAddedZips(false);
+			for (Map.Entry<String, File> entry : packagingContext.getArchiveFiles().entrySet()) {
+				// the sources of deduplicated siblings are left out, as in the module directory
+				if (!packagingContext.getArchiveExclusions().contains(entry.getKey())) {
+					entries.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		// the override mode of the archiver if any, else the default one: the
+		// own mode of a directory can't be read without walking its content
+		final int directoryMode = moduleArchiver.getDirectoryMode();
+		final Set<String> directories = new HashSet<String>();
+		for (String path : getEntryOrder(entries.keySet())) {
+			for (int slash = path.indexOf('/'); slash > 0; slash = path.indexOf('/', slash + 1)) {
+				final String parent = path.substring(0, slash);
+				if (directories.add(parent) && isIncluded(parent, includePatterns, excludePatterns)) {
+					final File directory = new File(moduleDirectory, parent);
+					if (directory.isDirectory()) {
+						moduleArchiver.addResource(new PlexusIoFileResource(directory), parent, directoryMode);
+					}
+				}
+			}
+			final File file = entries.get(path);
+			if (!file.isDirectory()) {
+				// the override mode of the archiver if any, else the own mode of the file
+				moduleArchiver.addFile(file, path);
+			} else if (directories.add(path)) {
+				moduleArchiver.addResource(new PlexusIoFileResource(file), path, directoryMode);
+			}
+		}
+	}
+
+	private static boolean isIncluded(String path, String[] includePatterns, String[] excludePatterns) {
+		final String name = path.replace('/', File.separatorChar);
+		return matchesAny(name, includePatterns) && !matchesAny(name, excludePatterns);
+	}
+
+	/**
+	 * Orders the entries of the module archive: <tt>manifest.xml</tt> first,
+	 * then the sources it lists in the same order, then any other file.
+	 *
+	 * @param paths
+	 *            the paths of the entries, in registration order
+	 * @return the ordered paths
+	 * @throws IOException
+	 *             if the manifest could not be read
+	 */
+	private Collection<String> getEntryOrder(Set<String> paths) throws IOException {
+		if (!manifestFirst || !paths.contains(MANIFEST_NAME)) {
+			return paths;
+		}
+		final Set<String> order = new LinkedHashSet<String>(paths.size() * 4 / 3 + 1);
+		order.add(MANIFEST_NAME);
+		for (String source : ManifestSnapshot.read(new File(getModuleDirectory(), MANIFEST_NAME)).getSources()) {
+			if (paths.contains(source)) {
+				order.add(source);
+			}
+		}
+		if (order.size() < paths.size()) {
+			getLog().debug((paths.size() - order.size()) + " archive entries are not listed in the manifest.");
+			order.addAll(paths);
+		}
+		return order;
+	}
+
+	/**
+	 * Normalizes patterns as the directory scanner does.
+	 */
+	private static String[] normalizePatterns(String[] patterns) {
+		final String[] normalized = new String[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			String pattern = patterns[i].trim().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+			if (pattern.endsWith(File.separator)) {
+				pattern += "**";
+			}
+			normalized[i] = pattern;
+		}
+		return normalized;
+	}
+
+	private static boolean matchesAny(String path, String[] patterns) {
+		for (String pattern : patterns) {
+			if (SelectorUtils.matchPath(pattern, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	protected static File getTargetFile(File basedir, String finalName, String classifier, String type) {
 		if (classifier == null) {
 			classifier = "";
@@ -310,12 +586,25 @@ public class ModuleMojo extends AbstractModuleMojo {
             throw new MojoExecutionException(e.getMessage(), e);
         }
 
+        final FiletypeRegistry filetypeRegistry;
+        try {
+            filetypeRegistry = new FiletypeRegistry(getExtensionTypes());
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+
         final ModulePackagingContext context = new DefaultModulePackagingContext(moduleDirectory, cache, defaultFilterWrappers,
-                getNonFilteredFileExtensions(), filteringDeploymentDescriptors, this.artifactFactory);
+                getNonFilteredFileExtensions(), filteringDeploymentDescriptors, this.artifactFactory, filetypeRegistry);
+        packagingContext = context;
 
         ModulePackagingTask modulePackagingTask = new ModuleProjectPackagingTask(moduleResources, manifestXml, generateManifestXml);
 
         modulePackagingTask.performPackaging(context);
+        try {
+            context.getEncodingDetector().save();
+        } catch (IOException e) {
+            getLog().warn("Unable to save the encodings cache: " + e.getMessage());
+        }
 
         // Post packaging
         final List<ModulePostPackagingTask> postPackagingTasks = getPostPackagingTasks();
@@ -335,13 +624,19 @@ public class ModuleMojo extends AbstractModuleMojo {
      * instances to invoke to perform the post-packaging.
      *
      * @return the list of post packaging tasks
+     * @throws MojoExecutionException
+     *             if the duplicate classes handling is not valid
      */
-    private List<ModulePostPackagingTask> getPostPackagingTasks() {
-        final List<ModulePostPackagingTask> postPackagingTasks = new ArrayList<ModulePostPackagingTask>(1);
+    private List<ModulePostPackagingTask> getPostPackagingTasks() throws MojoExecutionException {
+        final List<ModulePostPackagingTask> postPackagingTasks = new ArrayList<ModulePostPackagingTask>(2);
         if (useCache) {
             postPackagingTasks.add(new SaveModuleStructurePostPackagingTask(cacheFile));
         }
-        // TODO add lib scanning to detect duplicates
+        if ("warn".equalsIgnoreCase(duplicateClasses) || "fail".equalsIgnoreCase(duplicateClasses)) {
+            postPackagingTasks.add(new DuplicateClassesPostPackagingTask("fail".equalsIgnoreCase(duplicateClasses)));
+        } else if (!"ignore".equalsIgnoreCase(duplicateClasses)) {
+            throw new MojoExecutionException("Invalid duplicateClasses[" + duplicateClasses + "], expected ignore, warn or fail");
+        }
         return postPackagingTasks;
     }
 
@@ -362,16 +657,29 @@ public class ModuleMojo extends AbstractModuleMojo {
 
         private boolean filteringDeploymentDescriptors;
 
+        private File classesArchive;
+
+        private final Set<String> archiveExclusions = new LinkedHashSet<String>();
+
+        private final Map<String, File> archiveFiles = new LinkedHashMap<String, File>();
+
+        private final FiletypeRegistry filetypeRegistry;
+
+        private TextEncodingDetector encodingDetector;
+
         public DefaultModulePackagingContext() {
             this.moduleDirectory = null;
             this.moduleStructure = null;
             this.filterWrappers = null;
             this.artifactFactory = null;
+            this.filetypeRegistry = FiletypeRegistry.DEFAULT;
         }
 
         public DefaultModulePackagingContext(File moduleDirectory, final ModuleStructure moduleStructure, List<FileUtils.FilterWrapper> filterWrappers,
-                                             List<String> nonFilteredFileExtensions, boolean filteringDeploymentDescriptors, ArtifactFactory artifactFactory) {
+                                             List<String> nonFilteredFileExtensions, boolean filteringDeploymentDescriptors, ArtifactFactory artifactFactory,
+                                             FiletypeRegistry filetypeRegistry) {
             this.moduleDirectory = moduleDirectory;
+            this.filetypeRegistry = filetypeRegistry;
             this.moduleStructure = moduleStructure;
             this.filterWrappers = filterWrappers;
             this.artifactFactory = artifactFactory;
@@ -475,6 +783,38 @@ public class ModuleMojo extends AbstractModuleMojo {
             return manifestEncoding;
         }
 
+        public int getManifestSpillThreshold() {
+            return manifestSpillThreshold;
+        }
+
+        public boolean isManifestFragments() {
+            return manifestFragments;
+        }
+
+        public boolean isDedupSiblings() {
+            return dedupSiblings;
+        }
+
+        public void excludeFromArchive(String path) {
+            archiveExclusions.add(path);
+        }
+
+        public Set<String> getArchiveExclusions() {
+            return archiveExclusions;
+        }
+
+        public boolean isStreamLibraries() {
+            return streamLibraries;
+        }
+
+        public void addToArchive(File file, String path) {
+            archiveFiles.put(path, file);
+        }
+
+        public Map<String, File> getArchiveFiles() {
+            return archiveFiles;
+        }
+
         public File getDescriptorsDirectory() {
             return descriptorsDir;
         }
@@ -499,6 +839,25 @@ public class ModuleMojo extends AbstractModuleMojo {
             return workDirectory;
         }
 
+        public File getClassesArchive() {
+            return classesArchive;
+        }
+
+        public void setClassesArchive(File classesArchive) {
+            this.classesArchive = classesArchive;
+        }
+
+        public FiletypeRegistry getFiletypeRegistry() {
+            return filetypeRegistry;
+        }
+
+        public synchronized TextEncodingDetector getEncodingDetector() {
+            if (encodingDetector == null) {
+                encodingDetector = new TextEncodingDetector(workDirectory != null ? new File(workDirectory, "encodings.cache") : null);
+            }
+            return encodingDetector;
+        }
+
         public ModuleResource getModuleSourceResource() {
             ModuleResource defaultModuleLocation = new ModuleResource();
             defaultModuleLocation.setDirectory(moduleSourceDirectory.getAbsolutePath());
@@ -0,0 +1,328 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.kamomileware.maven.plugin.opencms.native2ascii;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.CRC32;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import com.kamomileware.maven.plugin.opencms.util.TextEncodingDetector.TextEncoding;
+
+/**
+ * In process native2ascii implementation, without the JDK internal
+ * <code>sun.tools.native2ascii</code> classes.
+ *
+ * <p>Files are streamed through a {@link CharsetDecoder} for the encoding
+ * of the task, every char out of the ASCII range being written as a
+ * <code>&#92;uXXXX</code> escape. In reverse mode the escapes are decoded and
+ * the text encoded to the encoding of the task. Malformed and unmappable
+ * input is replaced, as the JDK tool does. When the task has an encoding
+ * detector, files with a byte order mark are decoded with that encoding and,
+ * if the encoding of the task is ASCII compatible, pure ASCII files are
+ * copied as is and valid UTF-8 files decoded as UTF-8. The CRC-32 and length
+ * of the source are computed while it is read. The buffers are reused
+ * between files, so an instance must not be used by several threads at
+ * once.</p>
+ *
+ * <p>Additional command line arguments of the task are ignored.</p>
+ */
+public final class BuiltinNative2Ascii implements Native2AsciiAdapter {
+
+    /**
+     * Identifies this adapter.
+     */
+    public static final String IMPLEMENTATION_NAME = "builtin";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    // room for every char of the char buffer escaped
+    private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE * 6);
+
+    // pending escape sequence in reverse mode
+    private final char[] escape = new char[6];
+
+    private int escapeLength;
+
+    private final CRC32 checksum = new CRC32();
+
+    private long length;
+
+    /** {@inheritDoc} */
+    public boolean convert(Native2Ascii args, File srcFile, File destFile)
+        throws MojoExecutionException {
+        Charset charset;
+        try {
+            charset = args.getEncoding() != null
+                ? Charset.forName(args.getEncoding()) : Charset.defaultCharset();
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Unsupported encoding "
+                                     + args.getEncoding(), e);
+        }
+
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        checksum.reset();
+        length = 0;
+        try {
+            TextEncoding detected = args.getEncodingDetector() != null && !args.getReverse()
+                ? args.getEncodingDetector().detect(srcFile, charset) : TextEncoding.UNKNOWN;
+            Charset decoding = detected.getCharset(charset);
+            if (detected != TextEncoding.ASCII && !decoding.equals(charset)
+                && args.getLog() != null && args.getLog().isDebugEnabled()) {
+                args.getLog().debug("   " + srcFile + " is decoded as " + decoding
+                                    + " instead of " + charset + ".");
+            }
+            in = new FileInputStream(srcFile);
+            out = new FileOutputStream(destFile);
+            if (args.getReverse()) {
+                toNative(in.getChannel(), out.getChannel(), charset);
+            } else if (detected == TextEncoding.ASCII) {
+                copy(in.getChannel(), out.getChannel());
+            } else {
+                toAscii(in.getChannel(), out.getChannel(), decoding,
+                        detected.getBomLength());
+            }
+            return true;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error converting " + srcFile
+                                     + " to " + destFile, e);
+        } finally {
+            close(in);
+            close(out);
+        }
+    }
+
+    /**
+     * Returns the CRC-32 of the source of the last conversion.
+     */
+    long getChecksum() {
+        return checksum.getValue();
+    }
+
+    /**
+     * Returns the length of the source of the last conversion.
+     */
+    long getLength() {
+        return length;
+    }
+
+    private void toAscii(FileChannel src, FileChannel dest, Charset charset, int bomLength)
+        throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        input.clear();
+        // the byte order mark is not part of the text
+        int skip = bomLength;
+        boolean eof = false;
+        while (!eof) {
+            eof = read(src) < 0;
+            input.flip();
+            int skipped = Math.min(skip, input.remaining());
+            input.position(input.position() + skipped);
+            skip -= skipped;
+            CoderResult result;
+            do {
+                chars.clear();
+                result = decoder.decode(input, chars, eof);
+                chars.flip();
+                writeEscaped(dest);
+            } while (result.isOverflow());
+            input.compact();
+        }
+        CoderResult result;
+        do {
+            chars.clear();
+            result = decoder.flush(chars);
+            chars.flip();
+            writeEscaped(dest);
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Copies the source as is, through the input buffer so its checksum is
+     * computed on the way.
+     */
+    private void copy(FileChannel src, FileChannel dest) throws IOException {
+        input.clear();
+        while (read(src) >= 0) {
+            input.flip();
+            while (input.hasRemaining()) {
+                dest.write(input);
+            }
+            input.clear();
+        }
+    }
+
+    /**
+     * Reads from the source into the input buffer, updating the checksum and
+     * length with the bytes read.
+     */
+    private int read(FileChannel src) throws IOException {
+        int start = input.position();
+        int read = src.read(input);
+        if (read > 0) {
+            checksum.update(input.array(), input.arrayOffset() + start, read);
+            length += read;
+        }
+        return read;
+    }
+
+    private void writeEscaped(FileChannel dest) throws IOException {
+        output.clear();
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c < 0x80) {
+                output.put((byte) c);
+            } else {
+                output.put((byte) '\\').put((byte) 'u')
+                    .put(HEX_DIGITS[(c >> 12) & 0xf])
+                    .put(HEX_DIGITS[(c >> 8) & 0xf])
+                    .put(HEX_DIGITS[(c >> 4) & 0xf])
+                    .put(HEX_DIGITS[c & 0xf]);
+            }
+        }
+        output.flip();
+        write(dest);
+    }
+
+    private void toNative(FileChannel src, FileChannel dest, Charset charset)
+        throws IOException {
+        CharsetEncoder encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        input.clear();
+        chars.clear();
+        escapeLength = 0;
+        while (read(src) >= 0) {
+            input.flip();
+            while (input.hasRemaining()) {
+                // an escape sequence may add up to six chars
+                if (chars.remaining() < escape.length) {
+                    encode(encoder, dest, false);
+                }
+                unescape((char) (input.get() & 0xff));
+            }
+            input.clear();
+        }
+        for (int i = 0; i < escapeLength; i++) {
+            if (!chars.hasRemaining()) {
+                encode(encoder, dest, false);
+            }
+            chars.put(escape[i]);
+        }
+        escapeLength = 0;
+        encode(encoder, dest, true);
+        CoderResult result;
+        do {
+            output.clear();
+            result = encoder.flush(output);
+            output.flip();
+            write(dest);
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Feeds a char of the ASCII input, translating the <code>&#92;uXXXX</code>
+     * escapes. An escaped backslash is kept as is, so it can't start an
+     * escape sequence.
+     */
+    private void unescape(char c) {
+        if (escapeLength == 0) {
+            if (c == '\\') {
+                escape[escapeLength++] = c;
+            } else {
+                chars.put(c);
+            }
+        } else if (escapeLength == 1) {
+            if (c == 'u') {
+                escape[escapeLength++] = c;
+            } else {
+                escapeLength = 0;
+                chars.put('\\');
+                if (c == '\\') {
+                    chars.put(c);
+                } else {
+                    unescape(c);
+                }
+            }
+        } else if (Character.digit(c, 16) >= 0) {
+            escape[escapeLength++] = c;
+            if (escapeLength == escape.length) {
+                escapeLength = 0;
+                chars.put((char) Integer.parseInt(new String(escape, 2, 4), 16));
+            }
+        } else {
+            // not an escape after all
+            chars.put(escape, 0, escapeLength);
+            escapeLength = 0;
+            unescape(c);
+        }
+    }
+
+    private void encode(CharsetEncoder encoder, FileChannel dest, boolean endOfInput)
+        throws IOException {
+        chars.flip();
+        CoderResult result;
+        do {
+            output.clear();
+            result = encoder.encode(chars, output, endOfInput);
+            output.flip();
+            write(dest);
+        } while (result.isOverflow());
+        chars.compact();
+    }
+
+    private void write(FileChannel dest) throws IOException {
+        while (output.hasRemaining()) {
+            dest.write(output);
+        }
+    }
+
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // nothing to recover
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.kamomileware.maven.plugin.opencms.native2ascii;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.kamomileware.maven.plugin.opencms.util.ChecksumUtils;
+
+/**
+ * Checksums of the sources converted by a native2ascii run, or by the
+ * conversion of the module resources, kept in the work directory between
+ * builds so a file whose content didn't change is not converted again even
+ * when its copy was touched.
+ * <p>
+ * The cache is only valid for the same conversion settings, any change of
+ * them discarding it. It is safe for use from several threads.
+ * </p>
+ */
+public class ConversionCache {
+
+	private static final String CHARSET = "UTF-8";
+
+	private final File file;
+
+	private final String settings;
+
+	private final Map<String, String> previous = new ConcurrentHashMap<String, String>();
+
+	private final Map<String, String> current = new ConcurrentHashMap<String, String>();
+
+	// a cache was found but broken or saved with other settings
+	private boolean discarded;
+
+	/**
+	 * Loads the cache, empty if missing, broken or saved with other settings.
+	 *
+	 * @param file
+	 *            the cache file
+	 * @param settings
+	 *            identifies the conversion settings
+	 */
+	public ConversionCache(File file, String settings) {
+		this.file = file;
+		this.settings = settings;
+		if (file.isFile()) {
+			try {
+				load();
+			} catch (IOException e) {
+				// a broken cache just means everything is converted again
+				previous.clear();
+				discarded = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the file of the cache of the conversions of a directory, in the
+	 * work directory, out of the module tree.
+	 *
+	 * @param workDirectory
+	 *            the work directory
+	 * @param directory
+	 *            the directory whose files are converted
+	 */
+	public static File getFile(File workDirectory, File directory) {
+		return new File(workDirectory, "native2ascii-" + Integer.toHexString(directory.getAbsolutePath().hashCode())
+				+ ".cache");
+	}
+
+	/**
+	 * Whether the target of a source is up to date, so it needn't be
+	 * converted again: it is newer than the source, unless a cache of other
+	 * settings was discarded, or the source content didn't change since it was
+	 * converted, the target then getting the timestamp of the source. The
+	 * entry of an up to date target is kept.
+	 *
+	 * @param path
+	 *            the path of the source in the cache
+	 * @param source
+	 *            the source
+	 * @param target
+	 *            the converted file
+	 * @throws IOException
+	 *             if the source can't be read
+	 */
+	public boolean isUpToDate(String path, File source, File target) throws IOException {
+		if (!target.isFile()) {
+			return false;
+		}
+		String checksum = previous.get(path);
+		if (target.lastModified() >= source.lastModified() && (checksum != null || !discarded)) {
+			keep(path);
+			return true;
+		}
+		if (checksum != null && checksum.equals(checksum(source))) {
+			// the source was touched, not changed
+			target.setLastModified(source.lastModified());
+			keep(path);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the checksum of the source when it was last converted.
+	 *
+	 * @return the checksum or <code>null</code> if it wasn't converted with
+	 *         the same settings
+	 */
+	String get(String path) {
+		return previous.get(path);
+	}
+
+	/**
+	 * Records the checksum of a source converted in this run.
+	 */
+	public void put(String path, String checksum) {
+		current.put(path, checksum);
+	}
+
+	/**
+	 * Keeps the entry of a source found up to date.
+	 */
+	void keep(String path) {
+		String checksum = previous.get(path);
+		if (checksum != null) {
+			current.put(path, checksum);
+		}
+	}
+
+	/**
+	 * Saves the entries of this run.
+	 *
+	 * @throws IOException
+	 *             if the cache file can't be written
+	 */
+	public void save() throws IOException {
+		file.getParentFile().mkdirs();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET));
+		try {
+			writer.write(settings);
+			writer.write('\n');
+			for (Entry<String, String> entry : current.entrySet()) {
+				writer.write(entry.getValue());
+				writer.write('\t');
+				writer.write(entry.getKey());
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void load() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+		try {
+			if (!settings.equals(reader.readLine())) {
+				discarded = true;
+				return;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int pos = line.indexOf('\t');
+				if (pos > 0) {
+					previous.put(line.substring(pos + 1), line.substring(0, pos));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the CRC-32, in hexadecimal, and the length of a file.
+	 *
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	static String checksum(File file) throws IOException {
+		return checksum(ChecksumUtils.crc32(file), file.length());
+	}
+
+	/**
+	 * Returns the checksum of a file read while converting it.
+	 *
+	 * @param crc
+	 *            the CRC-32 of the file
+	 * @param length
+	 *            the length of the file
+	 */
+	public static String checksum(long crc, long length) {
+		return Long.toHexString(crc) + ':' + length;
+	}
+}
@@ -18,21 +18,30 @@
 package com.kamomileware.maven.plugin.opencms.native2ascii;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.codehaus.plexus.util.FileUtils;
 
 import com.kamomileware.maven.plugin.opencms.ModuleResource;
 import com.kamomileware.maven.plugin.opencms.PlainEncodingConfig;
 import com.kamomileware.maven.plugin.opencms.native2ascii.Commandline.Argument;
 import com.kamomileware.maven.plugin.opencms.packaging.ModulePackagingContext;
+import com.kamomileware.maven.plugin.opencms.util.TextEncodingDetector;
 
 /**
  * Converts files from native encodings to ASCII.
@@ -44,13 +53,22 @@ public class Native2Ascii {
 
     private boolean reverse = false;  // convert from ascii back to native
     private String encoding = null;   // encoding to convert to/from
+    private TextEncodingDetector encodingDetector = null;
+    private Log log = null;
 
     private Native2AsciiAdapter nestedAdapter = null;
 	private List<Argument> args = new ArrayList<Argument>();
 
+    // the builtin adapter reuses its buffers, so each worker gets its own
+    private final ThreadLocal<Native2AsciiAdapter> workerAdapters = new ThreadLocal<Native2AsciiAdapter>() {
+        protected Native2AsciiAdapter initialValue() {
+            return nestedAdapter instanceof BuiltinNative2Ascii ? new BuiltinNative2Ascii() : nestedAdapter;
+        }
+    };
+
     public Native2Ascii()
     {
-    	nestedAdapter = new SunNative2Ascii();
+    	nestedAdapter = new BuiltinNative2Ascii();
     }
 
     /**
@@ -93,6 +111,44 @@ public class Native2Ascii {
         return encoding;
     }
 
+    /**
+     * Set the detector of the encoding of the files to convert, which lets
+     * pure ASCII files be copied as is and files with a byte order mark or
+     * valid UTF-8 be decoded with that encoding. If unset, the one of the
+     * packaging context is used.
+     *
+     * @param encodingDetector the encoding detector
+     */
+    public void setEncodingDetector(TextEncodingDetector encodingDetector) {
+        this.encodingDetector = encodingDetector;
+    }
+
+    /**
+     * The encoding detector.
+     * @return the encoding detector, <code>null</code> if none is used.
+     */
+    public TextEncodingDetector getEncodingDetector() {
+        return encodingDetector;
+    }
+
+    /**
+     * Set the log of the conversions. If unset, the one of the packaging
+     * context is used.
+     *
+     * @param log the log
+     */
+    public void setLog(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * The log of the conversions.
+     * @return the log, <code>null</code> if unset.
+     */
+    public Log getLog() {
+        return log;
+    }
+
     /**
      * Set the adapter explicitly.
      * @throws MojoExecutionException
@@ -120,6 +176,12 @@ public class Native2Ascii {
 
     	File src = new File(resource.getDirectory());
     	if(!src.exists()) return;
+    	if(encodingDetector == null) {
+    		encodingDetector = context.getEncodingDetector();
+    	}
+    	if(log == null) {
+    		log = context.getLog();
+    	}
 		// Set defaults where no user input
 		PlainEncodingConfig n2aConfig = fillDefaultConfig(resource.getN2aConfig());
 		File targetPath = resource.getModuleWorkingPath() != null
@@ -127,49 +189,175 @@ public class Native2Ascii {
 			: new File(context.getWorkDirectory(), src.getName());
     	logPerform(context.getLog(), n2aConfig, src, targetPath);
 
-    	// Decode files in the resource
-    	String[] filesToDecode = getFilesToIncludes(n2aConfig, src);
+    	final ConversionCache cache = new ConversionCache(ConversionCache.getFile(context.getWorkDirectory(), targetPath),
+    		getSettings());
+    	List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
 
-    	for (String filePath : filesToDecode)
+    	// Decode files in the resource
+    	final File srcDir = src;
+    	final File destDir = targetPath;
+    	for (final String filePath : getFilesToIncludes(n2aConfig, src))
     	{
-    		convert(filePath, filePath, src, targetPath);
+    		tasks.add(new Callable<Void>() {
+    			public Void call() throws MojoExecutionException, IOException {
+    				convertIfChanged(log, cache, filePath, srcDir, destDir);
+    				return null;
+    			}
+    		});
     	}
 
     	// Copy the rest of the files
-    	String[] filesToCopy = getFilesAndDirectoriesToExclude(n2aConfig, src);
-    	for( String filePath : filesToCopy )
+    	for( String filePath : getFilesAndDirectoriesToExclude(n2aConfig, src) )
     	{
-
-    		File source = new File( src,filePath );
-    		File destination = new File( targetPath, filePath );
+    		final File source = new File( src,filePath );
+    		final File destination = new File( targetPath, filePath );
     		if( source.isDirectory() )
     		{
     			destination.mkdirs();
     		}
     		else
     		{
-                try {
-					FileUtils.copyFile( source.getCanonicalFile(), destination );
-				}
-                catch (IOException e)
-				{
-					throw new MojoFailureException( "Error copying " + destination.getAbsolutePath(), e );
-				}
-
-                // preserve timestamp
-                destination.setLastModified( source.lastModified() );
-                context.getLog().debug( " + " + destination.getAbsolutePath() + " has been copied." );
+    			tasks.add(new Callable<Void>() {
+    				public Void call() throws MojoFailureException {
+    					copyIfChanged(log, source, destination);
+    					return null;
+    				}
+    			});
             }
     	}
+
+    	runAll(tasks);
+    	try {
+    		cache.save();
+    	} catch (IOException e) {
+    		log.warn("Unable to save the native2ascii cache: " + e.getMessage());
+    	}
 	}
 
+    /**
+     * Converts a file unless its target is newer than it, and no cache of
+     * other settings was found, or its content didn't change since it was last
+     * converted with the same settings. The builtin adapter computes the
+     * checksum of the source while converting it, the others read it again.
+     */
+    private void convertIfChanged(Log log, ConversionCache cache, String filePath, File srcDir, File destDir)
+        throws MojoExecutionException, IOException {
+        File srcFile = new File(srcDir, filePath);
+        File destFile = new File(destDir, filePath);
+        if (cache.isUpToDate(filePath, srcFile, destFile)) {
+            log.debug(" = " + destFile.getAbsolutePath() + " is up to date.");
+            return;
+        }
+        Native2AsciiAdapter adapter = convert(filePath, filePath, srcDir, destDir);
+        if (adapter instanceof BuiltinNative2Ascii) {
+            BuiltinNative2Ascii builtin = (BuiltinNative2Ascii) adapter;
+            cache.put(filePath, ConversionCache.checksum(builtin.getChecksum(), builtin.getLength()));
+        } else {
+            cache.put(filePath, ConversionCache.checksum(srcFile));
+        }
+    }
+
+    /**
+     * Copies a file unless the target already has its length and timestamp.
+     */
+    private static void copyIfChanged(Log log, File source, File destination) throws MojoFailureException {
+        if (destination.isFile() && destination.length() == source.length()
+            && destination.lastModified() == source.lastModified()) {
+            return;
+        }
+        try {
+            copy(source, destination);
+        } catch (IOException e) {
+            throw new MojoFailureException( "Error copying " + destination.getAbsolutePath(), e );
+        }
+
+        // preserve timestamp
+        destination.setLastModified( source.lastModified() );
+        log.debug( " + " + destination.getAbsolutePath() + " has been copied." );
+    }
+
+    /**
+     * Copies a file with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * so the content doesn't go through the heap.
+     */
+    private static void copy(File source, File destination) throws IOException {
+        destination.getParentFile().mkdirs();
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+            try {
+                FileChannel channel = in.getChannel();
+                long size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, out.getChannel());
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Runs the conversions and copies across a pool of as many workers as
+     * processors.
+     *
+     * @param tasks the conversions and copies
+     * @throws MojoExecutionException if a task failed
+     * @throws MojoFailureException if a task failed
+     */
+    public static void runAll(List<Callable<Void>> tasks) throws MojoExecutionException, MojoFailureException {
+        int workers = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        if (workers <= 1) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    rethrow(e);
+                }
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("native2ascii interrupted", e);
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void rethrow(Throwable t) throws MojoExecutionException, MojoFailureException {
+        if (t instanceof MojoExecutionException) {
+            throw (MojoExecutionException) t;
+        } else if (t instanceof MojoFailureException) {
+            throw (MojoFailureException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        throw new MojoExecutionException(t.getMessage(), t);
+    }
+
+    private String getSettings() {
+        return nestedAdapter.getClass().getName() + ':' + encoding + ':' + reverse + ':' + Arrays.toString(getArgs());
+    }
+
     /**
      * Convert a single file.
      *
      * @param srcName name of the input file.
      * @param destName name of the input file.
+     * @return the adapter of this thread, which converted the file
      */
-    private void convert(String srcName, String destName, File srcDir, File destDir)
+    private Native2AsciiAdapter convert(String srcName, String destName, File srcDir, File destDir)
         throws MojoExecutionException {
         File srcFile;                         // File to convert
         File destFile;                        // where to put the results
@@ -190,7 +378,8 @@ public class Native2Ascii {
         if (parentName != null) {
             File parentFile = new File(parentName);
 
-            if ((!parentFile.exists()) && (!parentFile.mkdirs())) {
+            // another worker may be creating it at the same time
+            if ((!parentFile.mkdirs()) && (!parentFile.isDirectory())) {
                 throw new MojoExecutionException("cannot create parent directory "
                                          + parentName);
             }
@@ -198,9 +387,11 @@ public class Native2Ascii {
 
 //        log("converting " + srcName, Project.MSG_VERBOSE);
 
-        if (!nestedAdapter.convert(this, srcFile, destFile)) {
+        Native2AsciiAdapter adapter = workerAdapters.get();
+        if (!adapter.convert(this, srcFile, destFile)) {
             throw new MojoExecutionException("conversion failed");
         }
+        return adapter;
     }
 
 	private void logPerform(Log log, PlainEncodingConfig n2aConfig, File src, File target)
@@ -260,6 +451,19 @@ public class Native2Ascii {
         return (String[]) tmp.toArray(res);
     }
 
+    /**
+     * Returns the files of a directory the configuration selects for
+     * conversion, the properties and acl files by default.
+     *
+     * @param n2aConfig the native2ascii configuration, may be <code>null</code>
+     * @param src the directory
+     * @return the paths of the files, relative to the directory
+     */
+    public String[] getFilesToConvert(PlainEncodingConfig n2aConfig, File src)
+    {
+    	return getFilesToIncludes(fillDefaultConfig(n2aConfig), src);
+    }
+
     protected String[] getFilesToIncludes(PlainEncodingConfig n2aConfig, File src)
     {
     	DirectoryScanner scanner = new DirectoryScanner();
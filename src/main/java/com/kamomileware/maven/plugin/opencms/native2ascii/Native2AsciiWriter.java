@@ -0,0 +1,90 @@
+package com.kamomileware.maven.plugin.opencms.native2ascii;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writer producing the output of native2ascii: ASCII chars are written as
+ * bytes, any other char as a <code>&#92;uXXXX</code> escape. It lets a
+ * conversion be the last stage of a reader chain, so a file can be decoded,
+ * filtered and converted in a single pass.
+ */
+public class Native2AsciiWriter extends Writer {
+
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[8192];
+
+    private int count;
+
+    /**
+     * @param out the stream receiving the ASCII bytes
+     */
+    public Native2AsciiWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void write(int c) throws IOException {
+        if (count > buffer.length - 6) {
+            flushBuffer();
+        }
+        put((char) c);
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            if (count > buffer.length - 6) {
+                flushBuffer();
+            }
+            put(cbuf[i]);
+        }
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            if (count > buffer.length - 6) {
+                flushBuffer();
+            }
+            put(str.charAt(i));
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void put(char c) {
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else {
+            buffer[count++] = '\\';
+            buffer[count++] = 'u';
+            buffer[count++] = HEX_DIGITS[(c >> 12) & 0xf];
+            buffer[count++] = HEX_DIGITS[(c >> 8) & 0xf];
+            buffer[count++] = HEX_DIGITS[(c >> 4) & 0xf];
+            buffer[count++] = HEX_DIGITS[c & 0xf];
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
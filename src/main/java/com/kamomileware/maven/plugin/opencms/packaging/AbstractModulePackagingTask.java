@@ -20,9 +20,18 @@ package com.kamomileware.maven.plugin.opencms.packaging;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Resource;
@@ -34,11 +43,16 @@ import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
 import org.codehaus.plexus.interpolation.InterpolationException;
 import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
 
 import com.kamomileware.maven.plugin.opencms.AbstractModuleMojo;
+import com.kamomileware.maven.plugin.opencms.native2ascii.ConversionCache;
+import com.kamomileware.maven.plugin.opencms.native2ascii.Native2AsciiWriter;
+import com.kamomileware.maven.plugin.opencms.util.ManifestUtils;
 import com.kamomileware.maven.plugin.opencms.util.MappingUtils;
 import com.kamomileware.maven.plugin.opencms.util.ModuleStructure;
 import com.kamomileware.maven.plugin.opencms.util.PathSet;
+import com.kamomileware.maven.plugin.opencms.util.TextEncodingDetector.TextEncoding;
 
 /**
  * @author Stephane Nicoll
@@ -206,6 +220,33 @@ public abstract class AbstractModulePackagingTask implements ModulePackagingTask
 	 */
 	protected void copyFile(String sourceId, final ModulePackagingContext context, final File file, String targetFilename, boolean toWorkDir)
 			throws IOException {
+		copyFile(sourceId, context, file, targetFilename, toWorkDir, true);
+	}
+
+	/**
+	 * Copy the specified file if the target location has not yet already been
+	 * used. A file the source already owned in the previous run is copied
+	 * again only if it's not up to date, unless <tt>onlyIfModified</tt> is
+	 * <tt>false</tt>.
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param context
+	 *            the context to use
+	 * @param file
+	 *            the file to copy
+	 * @param targetFilename
+	 *            the relative path according to the root of the module
+	 * @param toWorkDir
+	 *            whether to copy to the work directory
+	 * @param onlyIfModified
+	 *            whether to compare timestamps when the file was already
+	 *            registered by the source
+	 * @throws IOException
+	 *             if an error occurred while copying
+	 */
+	protected void copyFile(String sourceId, final ModulePackagingContext context, final File file, String targetFilename, boolean toWorkDir,
+			final boolean onlyIfModified) throws IOException {
 		final File targetFile = new File(toWorkDir ? context.getWorkDirectory() : context.getModuleDirectory(), targetFilename);
 		context.getModuleStructure().registerFile(sourceId, targetFilename, new ModuleStructure.RegistrationCallback() {
 			public void registered(String ownerId, String targetFilename) throws IOException {
@@ -213,7 +254,7 @@ public abstract class AbstractModulePackagingTask implements ModulePackagingTask
 			}
 
 			public void alreadyRegistered(String ownerId, String targetFilename) throws IOException {
-				copyFile(context, file, targetFile, targetFilename, true);
+				copyFile(context, file, targetFile, targetFilename, onlyIfModified);
 			}
 
 			public void refused(String ownerId, String targetFilename, String actualOwnerId) throws IOException {
@@ -283,6 +324,113 @@ public abstract class AbstractModulePackagingTask implements ModulePackagingTask
 		}
 	}
 
+	/**
+	 * Copy the specified file if the target location has not yet already been
+	 * used, converting it to ASCII with unicode escapes as native2ascii does.
+	 * The file is read once: it is decoded, filtered if requested and written
+	 * escaped straight to the module directory. Files with a byte order mark
+	 * are decoded with that encoding instead of the configured one. When the
+	 * configured encoding is ASCII compatible, pure ASCII files not filtered
+	 * are copied as is and valid UTF-8 files are decoded as UTF-8.
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param context
+	 *            the context to use
+	 * @param file
+	 *            the file to copy
+	 * @param targetFilename
+	 *            the relative path according to the root of the module
+	 * @param charset
+	 *            the configured encoding of the file
+	 * @param filtered
+	 *            whether to filter its content with the configured filter
+	 *            properties
+	 * @return true if the file has been copied, false otherwise
+	 * @throws IOException
+	 *             if an error occurred while copying
+	 */
+	protected boolean copyConvertedFile(String sourceId, final ModulePackagingContext context, File file, String targetFilename,
+			Charset charset, boolean filtered) throws IOException {
+
+		if (context.getModuleStructure().registerFile(sourceId, targetFilename)) {
+			convertFile(context, file, targetFilename, charset, filtered);
+			return true;
+		} else {
+			context.getLog().debug(" - " + targetFilename + " wasn't copied because it has already been packaged (converted).");
+			return false;
+		}
+	}
+
+	/**
+	 * Converts a file to the module directory as
+	 * {@link #copyConvertedFile(String, ModulePackagingContext, File, String, Charset, boolean)}
+	 * does, once its target location has been registered. It may be called
+	 * from several threads.
+	 *
+	 * @param context
+	 *            the context to use
+	 * @param file
+	 *            the file to copy
+	 * @param targetFilename
+	 *            the relative path according to the root of the module
+	 * @param charset
+	 *            the configured encoding of the file
+	 * @param filtered
+	 *            whether to filter its content with the configured filter
+	 *            properties
+	 * @return the checksum of the file read while converting it, as
+	 *         {@link ConversionCache#checksum(long, long)} formats it, or
+	 *         <code>null</code> if it was copied as is
+	 * @throws IOException
+	 *             if an error occurred while copying
+	 */
+	protected String convertFile(final ModulePackagingContext context, File file, String targetFilename, Charset charset,
+			boolean filtered) throws IOException {
+		final File targetFile = new File(context.getModuleDirectory(), targetFilename);
+		targetFile.getParentFile().mkdirs();
+
+		TextEncoding encoding = context.getEncodingDetector().detect(file, charset);
+		if (encoding == TextEncoding.ASCII && !filtered) {
+			ManifestUtils.copyFile(file, targetFile);
+			context.getLog().debug(" + " + targetFilename + " has been copied (ASCII).");
+			return null;
+		}
+		Charset decoding = encoding.getCharset(charset);
+		if (!decoding.equals(charset) && context.getLog().isDebugEnabled()) {
+			context.getLog().debug("   " + targetFilename + " is decoded as " + decoding + " instead of " + charset + ".");
+		}
+
+		CheckedInputStream in = new CheckedInputStream(new FileInputStream(file), new CRC32());
+		try {
+			// the byte order mark is not part of the text
+			int bomLength = encoding.getBomLength();
+			while (bomLength > 0 && in.read() >= 0) {
+				bomLength--;
+			}
+			Reader reader = new InputStreamReader(in, decoding);
+			if (filtered) {
+				for (FileUtils.FilterWrapper wrapper : context.getFilterWrappers()) {
+					reader = wrapper.getReader(reader);
+				}
+			}
+			Writer writer = new Native2AsciiWriter(new FileOutputStream(targetFile));
+			try {
+				char[] buffer = new char[8192];
+				int read;
+				while ((read = reader.read(buffer)) >= 0) {
+					writer.write(buffer, 0, read);
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			in.close();
+		}
+		context.getLog().debug(" + " + targetFilename + " has been copied (converted" + (filtered ? ", filtered)." : ")."));
+		return ConversionCache.checksum(in.getChecksum().getValue(), file.length());
+	}
+
 	/**
 	 * Unpacks the specified file to the specified directory.
 	 *
@@ -509,6 +657,23 @@ public abstract class AbstractModulePackagingTask implements ModulePackagingTask
 		return scanner.getIncludedDirectories();
 	}
 
+	/**
+	 * Returns the prefix of the paths written below the module source target
+	 * directory, the one the files are both registered and written with.
+	 *
+	 * @param context
+	 *            the packaging context
+	 * @return the prefix ending with a slash, or an empty string if the target
+	 *         is the module directory itself
+	 */
+	protected String getModuleSourceTargetPrefix(ModulePackagingContext context) {
+		final String prefix = context.getModuleSourceTargetDirectory();
+		if (prefix == null || StringUtils.equals(".", prefix) || StringUtils.equals("./", prefix)) {
+			return "";
+		}
+		return prefix.endsWith("/") ? prefix : prefix.concat("/");
+	}
+
 	/**
 	 * Returns the final name of the specified artifact.
 	 *
@@ -19,16 +19,22 @@ package com.kamomileware.maven.plugin.opencms.packaging;
  * under the License.
  */
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.interpolation.InterpolationException;
+import org.codehaus.plexus.util.StringUtils;
+
+import com.kamomileware.maven.plugin.opencms.util.DependencyInfo;
+import com.kamomileware.maven.plugin.opencms.util.ModuleStructure;
 
 /**
  * Handles the artifacts that needs to be packaged in the web application.
@@ -56,13 +62,13 @@ public class ArtifactsPackagingTask extends AbstractModulePackagingTask {
 	public void performPackaging(ModulePackagingContext context) throws MojoExecutionException {
 		try {
 			final ScopeArtifactFilter filter = new ScopeArtifactFilter(Artifact.SCOPE_RUNTIME);
-			final List<String> duplicates = findDuplicates(context, artifacts);
-			final String prefix = context.getModuleSourceTargetDirectory() == null ? "" : context.getModuleSourceTargetDirectory()
-					.endsWith("/") ? context.getModuleSourceTargetDirectory() : context.getModuleSourceTargetDirectory().concat("/");
+			final Map<Artifact, String> finalNames = getArtifactFinalNames(context, artifacts);
+			final Set<String> duplicates = findDuplicates(finalNames);
+			final String prefix = getModuleSourceTargetPrefix(context);
 
 			for (Iterator<Artifact> iter = artifacts.iterator(); iter.hasNext();) {
 				Artifact artifact = (Artifact) iter.next();
-				String targetFileName = getArtifactFinalName(context, artifact);
+				String targetFileName = finalNames.get(artifact);
 
 				context.getLog().debug("Processing: " + targetFileName);
 
@@ -81,10 +87,10 @@ public class ArtifactsPackagingTask extends AbstractModulePackagingTask {
 						} else if ("aar".equals(type)) {
 							copyFile(id, context, artifact.getFile(), SERVICES_PATH + targetFileName, false);
 						} else if ("jar".equals(type) || "ejb".equals(type) || "ejb-client".equals(type) || "test-jar".equals(type)) {
-							copyFile(id, context, artifact.getFile(), prefix + LIB_PATH + targetFileName, false);
+							copyLibrary(context, artifact, prefix + LIB_PATH + targetFileName);
 						} else if ("par".equals(type)) {
 							targetFileName = targetFileName.substring(0, targetFileName.lastIndexOf('.')) + ".jar";
-							copyFile(id, context, artifact.getFile(), prefix + LIB_PATH + targetFileName, false);
+							copyLibrary(context, artifact, prefix + LIB_PATH + targetFileName);
 						} else if ("war".equals(type)) {
 							// Nothing to do here, it is an overlay and it's
 							// already handled
@@ -107,25 +113,103 @@ public class ArtifactsPackagingTask extends AbstractModulePackagingTask {
 	}
 
 	/**
-	 * Searches a set of artifacts for duplicate filenames and returns a list of
-	 * duplicates.
+	 * Copies a library to the module directory or, when libraries are
+	 * streamed, adds it to the module archive straight from its file. The
+	 * library directory is created anyway, so the manifest generation lists
+	 * the streamed libraries.
+	 *
+	 * @param context
+	 *            the packaging context
+	 * @param artifact
+	 *            the library artifact
+	 * @param targetFilename
+	 *            the relative path according to the root of the module
+	 * @throws IOException
+	 *             if an error occurred while copying
+	 */
+	private void copyLibrary(ModulePackagingContext context, Artifact artifact, String targetFilename) throws IOException {
+		final File file = artifact.getFile();
+		if (!context.isStreamLibraries()) {
+			final File targetFile = new File(context.getModuleDirectory(), targetFilename);
+			if (isUpToDate(context, artifact, targetFile)) {
+				if (context.getModuleStructure().registerFile(id, targetFilename)) {
+					context.getLog().debug(" * " + targetFilename + " is up to date.");
+				} else {
+					context.getLog().debug(" - " + targetFilename + " wasn't copied because it has already been packaged.");
+				}
+			} else {
+				copyFile(id, context, file, targetFilename, false, false);
+			}
+		} else if (context.getModuleStructure().registerFile(id, targetFilename)) {
+			File targetFile = new File(context.getModuleDirectory(), targetFilename);
+			targetFile.getParentFile().mkdirs();
+			// a copy left by a previous build would be archived twice
+			if (targetFile.isFile()) {
+				targetFile.delete();
+			}
+			context.addToArchive(file, targetFilename.replace(File.separatorChar, '/'));
+			context.getLog().debug(" + " + targetFilename + " will be streamed from [" + file + "]");
+		} else {
+			context.getLog().debug(" - " + targetFilename + " wasn't streamed because it has already been packaged.");
+		}
+	}
+
+	/**
+	 * Checks whether the copy of a library left by the previous run can be
+	 * kept, comparing the checksums of the library in both runs instead of
+	 * timestamps, which resolving snapshots keeps touching.
+	 *
+	 * @param context
+	 *            the packaging context
+	 * @param artifact
+	 *            the library artifact, whose target file name is registered
+	 * @param targetFile
+	 *            the copy of the library
+	 * @return true if the copy has the same bytes as the library
+	 * @throws IOException
+	 *             if the library can't be read
+	 */
+	private boolean isUpToDate(ModulePackagingContext context, Artifact artifact, File targetFile) throws IOException {
+		final ModuleStructure structure = context.getModuleStructure();
+		final DependencyInfo previous = structure.getCachedDependencyInfo(artifact);
+		final String checksum = structure.registerChecksum(artifact);
+		return previous != null && targetFile.isFile() && targetFile.length() == artifact.getFile().length()
+				&& checksum.equals(previous.getChecksum())
+				&& StringUtils.equals(previous.getTargetFileName(), structure.getDependencyInfo(artifact).getTargetFileName());
+	}
+
+	/**
+	 * Evaluates the bundling file name of each artifact once.
 	 * 
 	 * @param context
 	 *            the packaging context
 	 * @param artifacts
 	 *            set of artifacts
-	 * @return List of duplicated artifacts as bundling file names
+	 * @return the bundling file names by artifact
 	 */
-	private List<String> findDuplicates(ModulePackagingContext context, Set<Artifact> artifacts) throws InterpolationException {
-		List<String> duplicates = new ArrayList<String>();
-		List<String> identifiers = new ArrayList<String>();
+	private Map<Artifact, String> getArtifactFinalNames(ModulePackagingContext context, Set<Artifact> artifacts)
+			throws InterpolationException {
+		Map<Artifact, String> finalNames = new IdentityHashMap<Artifact, String>(artifacts.size());
 		for (Iterator<Artifact> iter = artifacts.iterator(); iter.hasNext();) {
 			Artifact artifact = iter.next();
-			String candidate = getArtifactFinalName(context, artifact);
-			if (identifiers.contains(candidate)) {
+			finalNames.put(artifact, getArtifactFinalName(context, artifact));
+		}
+		return finalNames;
+	}
+
+	/**
+	 * Searches the bundling file names of a set of artifacts for duplicates.
+	 * 
+	 * @param finalNames
+	 *            the bundling file names by artifact
+	 * @return the duplicated bundling file names
+	 */
+	private Set<String> findDuplicates(Map<Artifact, String> finalNames) {
+		Set<String> duplicates = new HashSet<String>();
+		Set<String> identifiers = new HashSet<String>(finalNames.size() * 4 / 3 + 1);
+		for (String candidate : finalNames.values()) {
+			if (!identifiers.add(candidate)) {
 				duplicates.add(candidate);
-			} else {
-				identifiers.add(candidate);
 			}
 		}
 		return duplicates;
@@ -70,11 +70,7 @@ public class ClassesPackagingTask
                	moduleClassesDirectory.mkdirs();
                 try
                 {
-                	String prefix = context.getModuleSourceTargetDirectory() == null
-    					? CLASSES_PATH
-    					: context.getModuleSourceTargetDirectory().endsWith("/")
-    						? context.getModuleSourceTargetDirectory().concat(CLASSES_PATH)
-    						: context.getModuleSourceTargetDirectory().concat("/").concat(CLASSES_PATH);
+                    String prefix = getModuleSourceTargetPrefix( context ) + CLASSES_PATH;
 
                     copyFiles( "currentBuild", context, context.getClassesDirectory(),
                                sources, prefix, false, false );
@@ -106,19 +102,25 @@ public class ClassesPackagingTask
                 "Could not get the final name of the artifact[" + artifact.getGroupId() + ":" + artifact.getArtifactId()
                     + ":" + artifact.getVersion() + "]", e );
         }
-        final String targetFilename = LIB_PATH + archiveName;
+        // registered where it's written, next to the libraries
+        final String targetFilename = getModuleSourceTargetPrefix( context ) + LIB_PATH + archiveName;
 
         if ( context.getModuleStructure().registerFile( "currentBuild", targetFilename ) )
         {
-        	File base = context.getModuleSourceTargetDirectory()==null
-				? context.getModuleDirectory()
-				: new File( context.getModuleDirectory(), context.getModuleSourceTargetDirectory() );
-
-            final File libDirectory = new File( base, LIB_PATH );
-            final File jarFile = new File( libDirectory, archiveName );
+            final File jarFile = new File( context.getModuleDirectory(), targetFilename );
+            final File stampFile = ClassesPackager.getStampFile( context.getWorkDirectory(), jarFile );
             final ClassesPackager packager = new ClassesPackager();
-            packager.packageClasses( context.getClassesDirectory(), jarFile, context.getJarArchiver(),
-                                     project, context.getArchive() );
+            if ( packager.isUpToDate( context.getClassesDirectory(), jarFile, project, context.getArchive(),
+                                      stampFile ) )
+            {
+                context.getLog().debug( " * " + targetFilename + " is up to date." );
+            }
+            else
+            {
+                packager.packageClasses( context.getClassesDirectory(), jarFile, context.getJarArchiver(),
+                                         project, context.getArchive(), stampFile );
+            }
+            context.setClassesArchive( jarFile );
 
         }
         else
@@ -0,0 +1,359 @@
+package com.kamomileware.maven.plugin.opencms.packaging;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.kamomileware.maven.plugin.opencms.ModuleResource;
+import com.kamomileware.maven.plugin.opencms.util.DependencyInfo;
+
+/**
+ * Scans the libraries of the module for classes found in several jars.
+ * <p>
+ * Only the central directory of each jar is read, in parallel: the name and
+ * the CRC-32 of its entries tell which classes are duplicated and whether
+ * their copies differ. The class index of each jar is kept in the work
+ * directory by checksum, the one recorded for the dependency when packaged,
+ * or by length and modification time for the other jars, so unchanged
+ * libraries are not read again.
+ * </p>
+ * <p>
+ * Duplicates are reported as warnings. When <code>fail</code> is set, copies
+ * with different content fail the build, and so does a library that can't be
+ * read; otherwise the library is reported and skipped.
+ * </p>
+ */
+public class DuplicateClassesPostPackagingTask implements ModulePostPackagingTask {
+
+	/**
+	 * Name of the index cache in the work directory.
+	 */
+	public static final String CACHE_FILE_NAME = "lib-classes.cache";
+
+	private static final String CHARSET = "UTF-8";
+
+	private static final String CLASS_EXT = ".class";
+
+	private static final int MAX_REPORTED_CLASSES = 5;
+
+	private final boolean fail;
+
+	public DuplicateClassesPostPackagingTask(boolean fail) {
+		this.fail = fail;
+	}
+
+	public void performPostPackaging(ModulePackagingContext context) throws MojoExecutionException, MojoFailureException {
+		final ModuleResource libResource = context.getLibResource();
+		final Map<String, File> jars = getLibraries(context, libResource);
+		if (jars.size() < 2) {
+			return;
+		}
+		final Map<String, String> keys = getIndexKeys(context, jars);
+		final File cacheFile = new File(context.getWorkDirectory(), CACHE_FILE_NAME);
+		final Map<String, Map<String, Long>> cached = loadCache(context, cacheFile);
+		final Map<String, String> unreadable = new ConcurrentHashMap<String, String>();
+		final Map<String, Map<String, Long>> indexes = indexAll(jars, keys, cached, unreadable);
+		for (Entry<String, String> jar : keys.entrySet()) {
+			if (unreadable.containsKey(jar.getValue())) {
+				context.getLog().warn("Skipping library [" + jar.getKey() + "] from the duplicated classes scan: "
+						+ unreadable.get(jar.getValue()));
+			}
+		}
+		try {
+			saveCache(cacheFile, indexes, unreadable.keySet());
+		} catch (IOException e) {
+			context.getLog().warn("Unable to save the library index cache: " + e.getMessage());
+		}
+
+		// class name to the jars holding it
+		final Map<String, List<String>> owners = new HashMap<String, List<String>>();
+		for (Entry<String, String> jar : keys.entrySet()) {
+			for (String className : indexes.get(jar.getValue()).keySet()) {
+				List<String> paths = owners.get(className);
+				if (paths == null) {
+					paths = new ArrayList<String>(1);
+					owners.put(className, paths);
+				}
+				paths.add(jar.getKey());
+			}
+		}
+		report(context, keys, indexes, owners);
+	}
+
+	/**
+	 * Returns the jars of the library directory registered by this build and
+	 * the streamed ones, the ones the module archive gets, by path relative to
+	 * the module directory. Stale jars left in the directory are not
+	 * registered.
+	 */
+	private Map<String, File> getLibraries(ModulePackagingContext context, ModuleResource libResource) {
+		final Map<String, File> jars = new TreeMap<String, File>();
+		final String libPath = libResource.getModuleTargetPath().replace('\\', '/') + "/";
+		final Set<String> exclusions = context.getArchiveExclusions();
+		for (Iterator<String> it = context.getModuleStructure().getFullStructure().iterator(); it.hasNext();) {
+			final String path = it.next().replace('\\', '/');
+			if (path.startsWith(libPath) && path.endsWith(".jar") && !exclusions.contains(path)) {
+				final File file = new File(libResource.getDirectory(), path.substring(libPath.length()));
+				if (file.isFile()) {
+					jars.put(path, file);
+				}
+			}
+		}
+		for (Entry<String, File> archived : context.getArchiveFiles().entrySet()) {
+			if (archived.getKey().startsWith(libPath) && archived.getKey().endsWith(".jar")
+					&& !exclusions.contains(archived.getKey())) {
+				jars.put(archived.getKey(), archived.getValue());
+			}
+		}
+		return jars;
+	}
+
+	/**
+	 * Returns the key of the index of each jar: the checksum of the
+	 * dependency packaged under its name, if recorded, its length and
+	 * modification time otherwise.
+	 */
+	private Map<String, String> getIndexKeys(ModulePackagingContext context, Map<String, File> jars) {
+		final Map<String, String> checksums = new HashMap<String, String>();
+		final Iterator<DependencyInfo> it = context.getModuleStructure().getDependenciesInfo().iterator();
+		while (it.hasNext()) {
+			DependencyInfo dependencyInfo = it.next();
+			if (dependencyInfo.getTargetFileName() != null && dependencyInfo.getChecksum() != null) {
+				checksums.put(dependencyInfo.getTargetFileName(), dependencyInfo.getChecksum());
+			}
+		}
+
+		final Map<String, String> keys = new LinkedHashMap<String, String>();
+		for (Entry<String, File> jar : jars.entrySet()) {
+			final File file = jar.getValue();
+			final String checksum = checksums.get(file.getName());
+			if (checksum != null) {
+				keys.put(jar.getKey(), "sha1:" + checksum);
+			} else {
+				keys.put(jar.getKey(), "stamp:" + file.length() + ":" + file.lastModified() + ":" + file.getAbsolutePath());
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Indexes the jars missing from the cache, reading their central
+	 * directories in parallel. Unless <code>fail</code> is set, a jar that
+	 * can't be read gets an empty index and the error is added to
+	 * <code>unreadable</code> by key.
+	 *
+	 * @return the indexes of the jars, by key
+	 */
+	private Map<String, Map<String, Long>> indexAll(Map<String, File> jars, Map<String, String> keys,
+			Map<String, Map<String, Long>> cached, final Map<String, String> unreadable) throws MojoExecutionException {
+		final Map<String, Map<String, Long>> indexes = new ConcurrentHashMap<String, Map<String, Long>>();
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (Entry<String, String> jar : keys.entrySet()) {
+			final String key = jar.getValue();
+			final Map<String, Long> index = cached.get(key);
+			if (index != null) {
+				indexes.put(key, index);
+			} else if (!indexes.containsKey(key)) {
+				final File file = jars.get(jar.getKey());
+				// marks the key as taken, for jars with the same checksum
+				indexes.put(key, new HashMap<String, Long>());
+				tasks.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						try {
+							indexes.put(key, index(file));
+						} catch (IOException e) {
+							if (fail) {
+								throw e;
+							}
+							unreadable.put(key, e.getMessage());
+						}
+						return null;
+					}
+				});
+			}
+		}
+
+		final int workers = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+		try {
+			if (workers <= 1) {
+				for (Callable<Void> task : tasks) {
+					task.call();
+				}
+			} else {
+				final ExecutorService executor = Executors.newFixedThreadPool(workers);
+				try {
+					for (Future<Void> result : executor.invokeAll(tasks)) {
+						result.get();
+					}
+				} finally {
+					executor.shutdownNow();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Library scanning interrupted", e);
+		} catch (ExecutionException e) {
+			throw new MojoExecutionException("Could not scan the libraries: " + e.getCause().getMessage(), e.getCause());
+		} catch (Exception e) {
+			throw new MojoExecutionException("Could not scan the libraries: " + e.getMessage(), e);
+		}
+		return indexes;
+	}
+
+	/**
+	 * Reads the classes of a jar from its central directory.
+	 *
+	 * @return the CRC-32 of the classes, by class name
+	 */
+	private static Map<String, Long> index(File file) throws IOException {
+		final Map<String, Long> index = new HashMap<String, Long>();
+		final ZipFile zip;
+		try {
+			zip = new ZipFile(file);
+		} catch (IOException e) {
+			throw new IOException("Could not read [" + file + "]: " + e.getMessage());
+		}
+		try {
+			final Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName();
+				// versioned classes of multi release jars are duplicates by design
+				if (!entry.isDirectory() && name.endsWith(CLASS_EXT) && !name.startsWith("META-INF/")
+						&& !name.endsWith("module-info.class")) {
+					index.put(name.substring(0, name.length() - CLASS_EXT.length()).replace('/', '.'), entry.getCrc());
+				}
+			}
+		} finally {
+			zip.close();
+		}
+		return index;
+	}
+
+	private void report(ModulePackagingContext context, Map<String, String> keys, Map<String, Map<String, Long>> indexes,
+			Map<String, List<String>> owners) throws MojoFailureException {
+		// duplicated classes, grouped by the jars holding them
+		final Map<String, List<String>> byJars = new TreeMap<String, List<String>>();
+		final Map<String, Integer> differing = new HashMap<String, Integer>();
+		for (Entry<String, List<String>> owner : owners.entrySet()) {
+			final List<String> paths = owner.getValue();
+			if (paths.size() < 2) {
+				continue;
+			}
+			final String group = paths.toString();
+			List<String> classes = byJars.get(group);
+			if (classes == null) {
+				classes = new ArrayList<String>();
+				byJars.put(group, classes);
+				differing.put(group, 0);
+			}
+			classes.add(owner.getKey());
+			final Long crc = indexes.get(keys.get(paths.get(0))).get(owner.getKey());
+			for (String path : paths) {
+				if (!crc.equals(indexes.get(keys.get(path)).get(owner.getKey()))) {
+					differing.put(group, differing.get(group) + 1);
+					break;
+				}
+			}
+		}
+
+		int conflicts = 0;
+		for (Entry<String, List<String>> group : byJars.entrySet()) {
+			final List<String> classes = group.getValue();
+			Collections.sort(classes);
+			final int count = differing.get(group.getKey());
+			conflicts += count;
+			context.getLog().warn(
+					"Libraries " + group.getKey() + " share " + classes.size() + " classes, " + count + " of them different: "
+							+ classes.subList(0, Math.min(classes.size(), MAX_REPORTED_CLASSES))
+							+ (classes.size() > MAX_REPORTED_CLASSES ? "..." : ""));
+		}
+		if (fail && conflicts > 0) {
+			throw new MojoFailureException("Classes packaged in several libraries with different content: " + conflicts);
+		}
+	}
+
+	private Map<String, Map<String, Long>> loadCache(ModulePackagingContext context, File cacheFile) {
+		final Map<String, Map<String, Long>> cached = new HashMap<String, Map<String, Long>>();
+		if (!cacheFile.isFile()) {
+			return cached;
+		}
+		try {
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), CHARSET));
+			try {
+				Map<String, Long> index = null;
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("\t")) {
+						int pos = line.indexOf('\t', 1);
+						index.put(line.substring(1, pos), Long.valueOf(line.substring(pos + 1), 16));
+					} else {
+						index = new HashMap<String, Long>();
+						cached.put(line, index);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			cached.clear();
+		} catch (RuntimeException e) {
+			// a broken cache just means the libraries are read again
+			context.getLog().debug("Discarding the library index cache: " + e);
+			cached.clear();
+		}
+		return cached;
+	}
+
+	private void saveCache(File cacheFile, Map<String, Map<String, Long>> indexes, Set<String> excluded) throws IOException {
+		cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(cacheFile), CHARSET));
+		try {
+			for (Entry<String, Map<String, Long>> index : indexes.entrySet()) {
+				// unreadable jars are tried again next time
+				if (excluded.contains(index.getKey())) {
+					continue;
+				}
+				writer.write(index.getKey());
+				writer.write('\n');
+				for (Entry<String, Long> entry : index.getValue().entrySet()) {
+					writer.write('\t');
+					writer.write(entry.getKey());
+					writer.write('\t');
+					writer.write(Long.toHexString(entry.getValue()));
+					writer.write('\n');
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -6,8 +6,15 @@ import com.kamomileware.maven.plugin.opencms.ManifestBean.Filetype;
 import com.kamomileware.maven.plugin.opencms.ManifestBean.PermissionSet;
 import com.kamomileware.maven.plugin.opencms.ManifestBean.ResourceFileBean;
 import com.kamomileware.maven.plugin.opencms.ModuleResource;
+import com.kamomileware.maven.plugin.opencms.util.ChecksumUtils;
 import com.kamomileware.maven.plugin.opencms.util.CmsUUID;
+import com.kamomileware.maven.plugin.opencms.util.FiletypeRegistry;
+import com.kamomileware.maven.plugin.opencms.util.FiletypeRegistry.ResourceType;
+import com.kamomileware.maven.plugin.opencms.util.ManifestFragmentStore;
+import com.kamomileware.maven.plugin.opencms.util.ManifestSnapshot;
 import com.kamomileware.maven.plugin.opencms.util.ManifestUtils;
+import com.kamomileware.maven.plugin.opencms.util.PathTrie;
+import com.kamomileware.maven.plugin.opencms.util.SidecarProperties;
 import org.antlr.stringtemplate.StringTemplate;
 import org.antlr.stringtemplate.StringTemplateErrorListener;
 import org.antlr.stringtemplate.StringTemplateGroup;
@@ -17,8 +24,14 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.zip.CRC32;
 
 /**
  * Task for OpenCms module manifest generation. The manifest is crafted by a StringTemplate
@@ -29,7 +42,8 @@ import java.util.Map.Entry;
  * associated to the item. <p>The properties file for a file resource is located in the <code>./__properties</code>
  * directory with the same name plus the <code>.properties</code> extension. The properties file for a folder resource is
  * located in <code>../__properties</code> directory with <code>__</code> prefix and the same name plus the
- * <code>.properties</code> extension.
+ * <code>.properties</code> extension. Alternatively the properties of all the resources of a directory can be
+ * consolidated in its <code>__properties/_directory.properties</code> file, see {@link SidecarProperties}.
  * There are especial properties for the file resources that affect the
  * VFS descriptor:
  * <ul><li><code>manifest.type.i</code> and <code>manifest.type.s</code>: indicates the type for the resource other
@@ -44,6 +58,16 @@ import java.util.Map.Entry;
  * <p>The security descriptors apply the same rules as the properties files but use <code>.acl</code> extension
  * instead.</p>
  *
+ * <p>The UUIDs and creation date of a previously generated manifest are reused, and the <code>manifest.xml</code>
+ * file is left untouched when the new content is identical, so its modification time only changes with its
+ * content.</p>
+ *
+ * <p>Past {@link ModulePackagingContext#getManifestSpillThreshold()} resources the finished file entries are rendered
+ * to a temporary file and only what duplicate and sibling resolution need is kept in memory; the manifest is then
+ * assembled by streaming that file. With {@link ModulePackagingContext#isManifestFragments()} the rendered entries are
+ * kept in a {@link ManifestFragmentStore} of the work directory between builds, and only the changed ones are
+ * rendered again.</p>
+ *
  * @author jagarcia
  *
  */
@@ -51,13 +75,12 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 
 	private static final Map<String, String> descriptorFilePropertyMap;
 
-	private static final String PROPERTIES_DIR_NAME = "__properties";
-
-	private static final String PREFIX_DIR = "__";
+	// bump when the rendering of the stored fragments changes outside the template
+	private static final long FRAGMENT_FORMAT_VERSION = 2L;
 
-	private static final String PROPERTIES_EXT = ".properties";
-
-	private static final String ACCESSCONTROL_EXT = ".acl";
+	// indentation the manifest template gives to the files element and to its entries
+	private static final String FILES_INDENT = "\t";
+	private static final String FILE_INDENT = FILES_INDENT + "\t";
 
 	static {
 		Map<String, String> descriptorFiles = new HashMap<String, String>();
@@ -73,12 +96,28 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 
 	private Map<String, Object> properties;
 	private Map<String, ResourceFileBean> resourcesByRelativePath = new HashMap<String, ResourceFileBean>();
-	private Map<String, ResourceFileBean> categoryByPath = new HashMap<String, ResourceFileBean>();
+	private Map<String, CmsUUID> categoryIdByPath = new HashMap<String, CmsUUID>();
 	private List<ResourceFileBean> siblingsSet = new ArrayList<ResourceFileBean>();
-	private Map<String, String> destinationsPath = new HashMap<String, String>();
+	private PathTrie<String> destinationsPath = new PathTrie<String>();
+	// canonical instances shared by the resources with the same properties and permissions
+	private Map<Map<String, String>, Set<Entry<String, String>>> propertySets = new HashMap<Map<String, String>, Set<Entry<String, String>>>();
+	private Map<Properties, Set<Entry<String, PermissionSet>>> aclSets = new HashMap<Properties, Set<Entry<String, PermissionSet>>>();
+	private Map<String, PermissionSet> permissionSets = new HashMap<String, PermissionSet>();
+	// invalid entries of the shared ACL sets, reported for every resource using them
+	private Map<Properties, List<String>> invalidAclEntries = new HashMap<Properties, List<String>>();
+	// destination of the first file seen by size, type and content digest, for deduplicating siblings
+	private Map<String, String> resourcesByContent = new HashMap<String, String>();
 	private ModulePackagingContext context;
-	@SuppressWarnings("unused")
-	private int propCounter = 0;
+	private ManifestSnapshot previousManifest;
+	// resource UUIDs of the previous manifest already given to a file of this build
+	private Set<CmsUUID> reusedResourceUUIDs = new HashSet<CmsUUID>();
+	private StringTemplateGroup templateGroup;
+	// rendered file entries, when they are stored on disk instead of kept in memory
+	private ManifestFragmentStore fragmentStore;
+	private List<ManifestFragmentStore.Fragment> fragments;
+	private SidecarProperties sidecarProperties;
+	// encoding of the properties files, null for ISO-8859-1
+	private Charset metadataCharset;
 	// properties filename for module part
 	final private static String module_info = "module.properties";
 
@@ -89,8 +128,16 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 	public void performPackaging(final ModulePackagingContext context) throws MojoExecutionException, MojoFailureException {
 
 		this.context = context;
+		this.metadataCharset = context.isDescriptorsN2AApply() ? ManifestUtils.toCharset(context.getDescriptorsEncoding()) : null;
+		this.sidecarProperties = new SidecarProperties(metadataCharset);
 
 		try {
+			File manifestFile = new File(context.getModuleDirectory(), "manifest.xml");
+			previousManifest = ManifestSnapshot.read(manifestFile);
+			if (context.isManifestFragments()) {
+				openFragmentStore(true);
+			}
+
 			// get module properties from descriptors
 			properties = getManifestProperties(context);
 			ManifestBean manifestBean = new ManifestBean(properties);
@@ -99,12 +146,34 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 			// second pass for completing the siblings not resolved
 			secondPassSibling(siblingsSet, manifestBean);
 
+			// render with the previous creation date, so an unchanged module gives the same content
+			String createdate = manifestBean.getCreatedate();
+			String previousCreatedate = previousManifest.getCreatedate();
+			if (previousCreatedate != null) {
+				manifestBean.setCreatedate(previousCreatedate);
+			}
+
+			if (fragmentStore != null) {
+				writeStoredManifest(manifestFile, manifestBean, previousCreatedate, createdate);
+				return;
+			}
+
 			// apply template to properties
 			String manifest = applyTemplate(context, manifestBean);
 
+			if (ManifestUtils.contentEquals(manifestFile, manifest, Charset.forName(getManifestCharset()))) {
+				context.getLog().info("Manifest is up to date, keeping [" + manifestFile + "]");
+				return;
+			}
+			if (previousCreatedate != null && createdate != null) {
+				manifest = replaceCreatedate(manifest, previousCreatedate, createdate);
+			}
+
 			writeFile(context, manifest);
 		} catch (IOException e) {
 			throw new MojoExecutionException("Error while witring manifest file ", e);
+		} finally {
+			closeFragmentStore();
 		}
 
 	}
@@ -123,7 +192,7 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		try {
 			File modulePropsFile = new File(resourcesPath.concat(module_info));
 			Properties moduleProp = new Properties();
-			moduleProp.load(new FileInputStream(modulePropsFile));
+			ManifestUtils.loadProperties(modulePropsFile, metadataCharset, moduleProp);
 			propertiesMap.putAll((Map) moduleProp);
 		} catch (FileNotFoundException e) {
 			throw new MojoFailureException("Module property file not found!", e);
@@ -185,7 +254,7 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 			calculateModuleDestinationPath(manifestBean, location);
 
 			// register folder resources
-			String[] resources = this.getFilesAndDirectoriesToIncludes(location);
+			String[] resources = addArchiveFiles(location, this.getFilesAndDirectoriesToIncludes(location));
 
 			for (String resourcePath : resources) {
 				// build resource bean from file and properties
@@ -199,6 +268,10 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 						siblingsSet.add(bean);
 					} else {
 						resourceBeanList.add(bean);
+						if (fragmentStore != null || (context.getManifestSpillThreshold() > 0
+								&& resourceBeanList.size() >= context.getManifestSpillThreshold())) {
+							storeResourceBeans(resourceBeanList);
+						}
 					}
 				}
 			}
@@ -249,6 +322,11 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		// Get Properties
 		String moduleResourcePath = getModuleResourcePath(moduleResource, resourcePath);
 		File resourceFile = new File(context.getModuleDirectory(), moduleResourcePath);
+		// files added to the archive straight from elsewhere are read from there
+		File contentFile = context.getArchiveFiles().get(moduleResourcePath);
+		if (contentFile == null) {
+			contentFile = resourceFile;
+		}
 
 		Properties props = lookForProperties(resourceFile);
 		if (context.getLog().isDebugEnabled()) {
@@ -275,8 +353,9 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 			context.getLog().debug("\tACL properties: " + aclProperties);
 		}
 
-		Filetype type = calculateBeanType(resourceFile, props);
-		bean.setType(Filetype.custom.equals(type) ? type.getCustonName() : type.name());
+		ResourceType resourceType = calculateBeanType(resourceFile, props);
+		Filetype type = resourceType.getFiletype();
+		bean.setType(resourceType.getName());
 
 		if (context.getLog().isDebugEnabled()) {
 			context.getLog().debug("\tType: " + bean.getType());
@@ -293,29 +372,41 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 
 		// check for categories
 		if (Filetype.folder.equals(type) && destination.contains("_categories/")) {
-			categoryByPath.put("/" + bean.getDestination() + "/", bean);
+			categoryIdByPath.put("/" + bean.getDestination() + "/", bean.getUuidstructure());
 		}
 
 		// Common properties
 		if (Filetype.sibling.equals(type)) {
 			resolveSibling(resourceFile, props, bean);
 		} else {
-			fillCommonBeanProperties(resourceFile, props, bean, type, destination);
+			fillCommonBeanProperties(contentFile, props, bean, type, destination);
+			if (context.isDedupSiblings() && !contentFile.isDirectory()) {
+				dedupContent(contentFile, bean);
+			}
 		}
 
 		// Properties
 		Map<String, String> vfsProperties = new HashMap<String, String>(props.size()),
 				sharedProperties = new HashMap<String, String>(props.size());
 		extractVfsProperties(props, sharedProperties, vfsProperties);
-		bean.setProperties(vfsProperties.entrySet());
-		bean.setSharedProperties(sharedProperties.entrySet());
+		bean.setProperties(internPropertySet(vfsProperties));
+		bean.setSharedProperties(internPropertySet(sharedProperties));
 
 		// Categories
 		bean.setRelations(extractRelations(vfsProperties));
 		bean.getRelations().addAll(extractRelations(sharedProperties));
 
-		// AccessControl
-		bean.setAcl(extractAclProperties(aclProperties, resourcePath).entrySet());
+		// AccessControl, parsed once for each distinct content
+		Set<Entry<String, PermissionSet>> acl = aclSets.get(aclProperties);
+		if (acl == null) {
+			acl = Collections.unmodifiableMap(extractAclProperties(aclProperties, resourcePath)).entrySet();
+			aclSets.put(aclProperties, acl);
+		} else if (invalidAclEntries.containsKey(aclProperties)) {
+			for (String invalid : invalidAclEntries.get(aclProperties)) {
+				context.getLog().warn(String.format("ACL Definition error on %s: %s", resourcePath, invalid));
+			}
+		}
+		bean.setAcl(acl);
 
 		// add to relative path
 		resourcesByRelativePath.put(destination, bean);
@@ -335,27 +426,14 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 				destinationsPath.put(resourcePath, destination);
 			}
 		} else {
-			// checks if an ancestor has destination.i
-			boolean found = false;
-			while (posName != -1) {
-				String pathName = resourcePath.substring(0, posName);
-				String middlePath = resourcePath.substring(posName);
-				if (destinationsPath.containsKey(pathName)) {
-					destination = (destinationsPath.get(pathName)).concat(middlePath);
-					found = true;
-					if (isDir) {
-						destinationsPath.put(resourcePath, destination);
-					}
-					break;
-				}
-
-				posName = pathName.lastIndexOf('/');
-			}
-
-			if (!found) {
+			// checks if an ancestor has destination.i, descendants of an overridden
+			// directory get its destination plus their relative path
+			PathTrie.Node<String> ancestor = destinationsPath.isEmpty() ? null : destinationsPath.findNearestAncestor(resourcePath);
+			if (ancestor != null) {
+				destination = ancestor.getValue().concat(resourcePath.substring(ancestor.getPathLength()));
+			} else {
 				destination = moduleTargetPath.concat(resourcePath);
 			}
-
 		}
 
 		if (destination.startsWith("/")) {
@@ -364,6 +442,24 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		return destination;
 	}
 
+	/**
+	 * Adds to the resources of a location the files under it that are added to
+	 * the archive without being copied to the module directory.
+	 */
+	private String[] addArchiveFiles(ModuleResource location, String[] resources) {
+		if (context.getArchiveFiles().isEmpty()) {
+			return resources;
+		}
+		String prefix = getModuleResourcePath(location, "");
+		List<String> all = new ArrayList<String>(Arrays.asList(resources));
+		for (String path : context.getArchiveFiles().keySet()) {
+			if (path.startsWith(prefix) && path.length() > prefix.length()) {
+				all.add(path.substring(prefix.length()));
+			}
+		}
+		return all.toArray(new String[all.size()]);
+	}
+
 	private String getModuleResourcePath(ModuleResource moduleResource, String resourcePath) {
 		if (!File.separator.equals("/")) {
 			resourcePath.replace(File.separator, "/");
@@ -380,6 +476,7 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 
 	protected Map<String, PermissionSet> extractAclProperties(Properties properties, String path) {
 		Map<String, PermissionSet> map = new HashMap<String, PermissionSet>(properties.size());
+		List<String> invalid = null;
 		Iterator<?> it = properties.keySet().iterator();
 		while (it.hasNext()) {
 			String key = (String) it.next();
@@ -401,24 +498,59 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 				flags = "0";
 			}
 			try {
-				map.put(key, new PermissionSet(permission, flags));
+				map.put(key, internPermissionSet(permission, flags));
 			} catch (NoSuchElementException e) {
+				if (invalid == null) {
+					invalid = new ArrayList<String>();
+				}
+				invalid.add(String.format("[%s,%s]", key, values));
 				context.getLog().warn(String.format("ACL Definition error on %s: [%s,%s]", path, key, values));
 			}
 		}
+		if (invalid != null) {
+			invalidAclEntries.put(properties, invalid);
+		}
 		return map;
 	}
 
+	/**
+	 * Returns the entries of the first property map seen with the same content,
+	 * so resources with identical properties share a single, read only,
+	 * instance.
+	 */
+	private Set<Entry<String, String>> internPropertySet(Map<String, String> properties) {
+		Set<Entry<String, String>> entries = propertySets.get(properties);
+		if (entries == null) {
+			entries = Collections.unmodifiableMap(properties).entrySet();
+			propertySets.put(properties, entries);
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns the permission set parsed for the permission and flags strings,
+	 * shared by every access entry with the same definition. The shared
+	 * instances are frozen, so they can't be modified.
+	 */
+	private PermissionSet internPermissionSet(String permission, String flags) {
+		String key = permission.concat("/").concat(flags);
+		PermissionSet permissionSet = permissionSets.get(key);
+		if (permissionSet == null) {
+			permissionSet = new PermissionSet(permission, flags).freeze();
+			permissionSets.put(key, permissionSet);
+		}
+		return permissionSet;
+	}
+
 	protected Set<CategoryBean> extractRelations(Map<String, String> properties) {
 		// TOADD: system wide system categories done in second pass
-		// Only content relative categories
-		Set<CategoryBean> categories = new HashSet<CategoryBean>();
+		// Only content relative categories, sorted for a stable fingerprint and rendering
+		Set<CategoryBean> categories = new TreeSet<CategoryBean>();
 		for (Entry<String, String> entry : properties.entrySet()) {
 			String key = entry.getKey();
-			if ((key.contains("category") || key.contains("categories")) && categoryByPath.containsKey(entry.getValue())) {
-				ResourceFileBean categoryBean = categoryByPath.get(entry.getValue());
+			if ((key.contains("category") || key.contains("categories")) && categoryIdByPath.containsKey(entry.getValue())) {
 				CategoryBean category = new CategoryBean();
-				category.setId(categoryBean.getUuidstructure());
+				category.setId(categoryIdByPath.get(entry.getValue()));
 				category.setPath(entry.getValue());
 				categories.add(category);
 			}
@@ -446,7 +578,51 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		}
 	}
 
+	/**
+	 * Turns the file bean into a sibling of the first file of the same type
+	 * with identical content, excluding its copy from the module archive.
+	 */
+	private void dedupContent(File file, ResourceFileBean bean) throws IOException {
+		String key = file.length() + ":" + bean.getType() + ":" + digest(file);
+		String firstDestination = resourcesByContent.get(key);
+		if (firstDestination == null) {
+			resourcesByContent.put(key, bean.getDestination());
+			return;
+		}
+		ResourceFileBean first = resourcesByRelativePath.get(firstDestination);
+		if (context.getLog().isDebugEnabled()) {
+			context.getLog().debug("\tSame content as " + first.getDestination() + ", added as sibling");
+		}
+		context.excludeFromArchive(bean.getSource());
+		buildSibling(first, bean);
+	}
+
+	private static String digest(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[8192];
+			int numRead;
+			while ((numRead = in.read(buf)) != -1) {
+				digest.update(buf, 0, numRead);
+			}
+		} finally {
+			in.close();
+		}
+		return ChecksumUtils.toHex(digest.digest());
+	}
+
 	private void fillUUIDs(ResourceFileBean bean, Filetype type, boolean isDirectory) throws MojoFailureException {
+		// siblings are written without their .sibling suffix
+		String destination = bean.getDestination();
+		if (destination.endsWith(".sibling")) {
+			destination = destination.substring(0, destination.length() - ".sibling".length());
+		}
 		switch (type) {
 		case binary:
 		case image:
@@ -454,7 +630,7 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		case plain:
 		case custom:
 			if (!isDirectory) {
-				bean.setUuidresource(new CmsUUID().getStringValue());
+				bean.setUuidresource(previousOrNewResourceUUID(destination));
 			}
 		case folder:
 		case downloadgallery:
@@ -462,14 +638,30 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		case linkgallery:
 		case sibling:
 		default:
-			bean.setUuidstructure(new CmsUUID().getStringValue());
+			bean.setUuidstructure(previousOrNewUUID(previousManifest.getUuidstructure(destination)));
 		}
 	}
 
+	private CmsUUID previousOrNewUUID(CmsUUID previous) throws MojoFailureException {
+		return previous != null ? previous : new CmsUUID();
+	}
+
+	/**
+	 * Returns the resource UUID the destination had in the previous manifest,
+	 * unless another file of this build already took it, or a new one.
+	 */
+	private CmsUUID previousOrNewResourceUUID(String destination) throws MojoFailureException {
+		CmsUUID previous = previousManifest.getUuidresource(destination);
+		if (previous != null && !reusedResourceUUIDs.add(previous)) {
+			context.getLog().debug("	Resource UUID " + previous + " already taken, generating a new one");
+			previous = null;
+		}
+		return previousOrNewUUID(previous);
+	}
+
 	private void fillCommonBeanProperties(File file, Properties props, ResourceFileBean bean, Filetype type, String destination) {
 		// Dates
-		String defaultDate = ManifestUtils.capitalizeFirstLettersTokenizer(
-				ManifestBean.dateFormat.format(new Date(file.lastModified())));
+		String defaultDate = ManifestBean.dateFormat.format(file.lastModified());
 
 		bean.setDatecreated(
 				props.containsKey("manifest.datecreated.i") ?
@@ -524,16 +716,16 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		}
 	}
 
-	protected Filetype calculateBeanType(File file, Properties props) {
+	protected ResourceType calculateBeanType(File file, Properties props) {
 		String typeStr = ManifestUtils.isNotNullOrZero(props.get("manifest.type.i")) ?
 				(String) props.get("manifest.type.i")
 				: (String) props.get("manifest.type.s");
 
-		Filetype type = ManifestUtils.isNotNullOrZero(typeStr) ?
-				Filetype.newCustomFiletype(typeStr) :
+		ResourceType type = ManifestUtils.isNotNullOrZero(typeStr) ?
+				context.getFiletypeRegistry().getTypeByName(typeStr) :
 				file.isDirectory() ?
-						Filetype.folder
-						: Filetype.calculateType(file);
+						FiletypeRegistry.getStandardType(Filetype.folder)
+						: context.getFiletypeRegistry().getTypeByFileName(file.getName());
 
 		return type;
 	}
@@ -553,42 +745,11 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 	}
 
 	protected Properties lookForProperties(File resource) throws IOException {
-		String propFilename = resource.getParent().concat(File.separator).concat(PROPERTIES_DIR_NAME).concat(File.separator)
-				.concat(resource.isDirectory() ? PREFIX_DIR : "").concat(resource.getName()).concat(PROPERTIES_EXT);
-		File propFile = new File(propFilename);
-		Properties props = new Properties();
-		InputStream in = null;
-		try {
-			in = new FileInputStream(propFile);
-			props.load(in);
-			propCounter++;
-		} catch (FileNotFoundException e) {
-			// Doesn't have to have a properties file
-		} finally {
-			if (in != null)
-				in.close();
-		}
-		return props;
+		return sidecarProperties.readProperties(resource);
 	}
 
 	protected Properties lookForAclProperties(File resource) throws IOException {
-		String propFilename = resource.getParent().concat(File.separator).concat(PROPERTIES_DIR_NAME).concat(File.separator)
-				.concat(resource.isDirectory() ? PREFIX_DIR + resource.getName() : resource.getName()).concat(ACCESSCONTROL_EXT);
-
-		File propFile = new File(propFilename);
-		Properties prop = new Properties();
-		InputStream in = null;
-		try {
-			in = new FileInputStream(propFile);
-			prop.load(in);
-			propCounter++;
-		} catch (FileNotFoundException e) {
-			// Doesn't have to have a properties file
-		} finally {
-			if (in != null)
-				in.close();
-		}
-		return prop;
+		return sidecarProperties.readAcl(resource);
 	}
 
 	protected static Map<String, String> extractProperties(Properties prop) {
@@ -623,20 +784,200 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 	}
 
 	protected String applyTemplate(final ModulePackagingContext context, ManifestBean manifestBean) {
-		InputStream is = ManifestGenerationTask.class.getResourceAsStream("/manifest.stg");
-		StringTemplateGroup stg = new StringTemplateGroup(new InputStreamReader(is), DefaultTemplateLexer.class);
-		stg.setErrorListener(new StringTemplateErrorListener() {
-			public void error(String msg, Throwable e) {
-				context.getLog().error(msg, e);
+		String manifest = applyTemplate(getTemplateGroup(context).getInstanceOf("manifest"), manifestBean,
+				context.getManifestEncoding(), null);
+		return manifest;
+	}
+
+	protected StringTemplateGroup getTemplateGroup(final ModulePackagingContext context) {
+		if (templateGroup == null) {
+			InputStream is = ManifestGenerationTask.class.getResourceAsStream("/manifest.stg");
+			StringTemplateGroup stg = new StringTemplateGroup(new InputStreamReader(is), DefaultTemplateLexer.class);
+			stg.setErrorListener(new StringTemplateErrorListener() {
+				public void error(String msg, Throwable e) {
+					context.getLog().error(msg, e);
+				}
+
+				public void warning(String msg) {
+					context.getLog().warn(msg);
+				}
+			});
+			templateGroup = stg;
+		}
+		return templateGroup;
+	}
+
+	/**
+	 * Stores the finished resource beans as rendered fragments, reusing the
+	 * fragment of the previous build when the bean didn't change, and forgets
+	 * them, keeping in the path index only what duplicate and sibling
+	 * resolution need. The stored beans were the only users of the shared
+	 * property and access entry sets, so these start over.
+	 */
+	private void storeResourceBeans(List<ResourceFileBean> beans) throws IOException {
+		if (fragmentStore == null) {
+			openFragmentStore(false);
+		}
+		for (ResourceFileBean bean : beans) {
+			long fingerprint = bean.fingerprint();
+			ManifestFragmentStore.Fragment fragment = fragmentStore.reuse(bean.getDestination(), fingerprint);
+			if (fragment == null) {
+				StringTemplate template = getTemplateGroup(context).getInstanceOf("file");
+				template.setAttribute("data", bean);
+				fragment = fragmentStore.append(bean.getDestination(), fingerprint, indent(template.toString()));
+			}
+			fragments.add(fragment);
+			resourcesByRelativePath.put(bean.getDestination(), toIndexEntry(bean));
+		}
+		beans.clear();
+		propertySets.clear();
+		aclSets.clear();
+		invalidAclEntries.clear();
+	}
+
+	/**
+	 * Opens the fragment store, the one kept in the work directory between
+	 * builds or a temporary one for spilling the entries of this build.
+	 */
+	private void openFragmentStore(boolean persistent) throws IOException {
+		File directory = context.getWorkDirectory();
+		directory.mkdirs();
+		Charset charset = Charset.forName(getManifestCharset());
+		if (persistent) {
+			fragmentStore = new ManifestFragmentStore(new File(directory, "manifest-fragments.dat"), new File(directory,
+					"manifest-fragments.idx"), charset, getTemplateVersion());
+		} else {
+			File spillFile = File.createTempFile("manifest-files", ".tmp", directory);
+			spillFile.deleteOnExit();
+			fragmentStore = new ManifestFragmentStore(spillFile, null, charset, 0L);
+			context.getLog().info("Spilling manifest file entries to [" + spillFile + "]");
+		}
+		fragments = new ArrayList<ManifestFragmentStore.Fragment>();
+	}
+
+	private void closeFragmentStore() {
+		if (fragmentStore != null) {
+			fragmentStore.close();
+			fragmentStore = null;
+		}
+	}
+
+	private String getManifestCharset() {
+		return context.getManifestEncoding() != null ? context.getManifestEncoding() : "UTF-8";
+	}
+
+	/**
+	 * Identifies the template the stored fragments were rendered with.
+	 */
+	private static long getTemplateVersion() throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = ManifestGenerationTask.class.getResourceAsStream("/manifest.stg");
+		try {
+			byte[] buf = new byte[8192];
+			int numRead;
+			while ((numRead = in.read(buf)) != -1) {
+				crc.update(buf, 0, numRead);
 			}
+		} finally {
+			in.close();
+		}
+		return FRAGMENT_FORMAT_VERSION << 32 | crc.getValue();
+	}
 
-			public void warning(String msg) {
-				context.getLog().warn(msg);
+	/**
+	 * Copies the fields a sibling takes from its source, without the
+	 * properties, relations and access control entries.
+	 */
+	private ResourceFileBean toIndexEntry(ResourceFileBean bean) {
+		ResourceFileBean entry = new ResourceFileBean();
+		entry.setDestination(bean.getDestination());
+		entry.setType(bean.getType());
+		entry.setUuidstructure(bean.getUuidstructure());
+		entry.setUuidresource(bean.getUuidresource());
+		entry.setDatecreated(bean.getDatecreated());
+		entry.setDatelastmodified(bean.getDatelastmodified());
+		entry.setUsercreated(bean.getUsercreated());
+		entry.setUserlastmodified(bean.getUserlastmodified());
+		return entry;
+	}
+
+	/**
+	 * Indents every non blank line of the text as the template does for the
+	 * entries of the <code>files</code> element.
+	 */
+	private static String indent(String text) {
+		StringBuilder sb = new StringBuilder(text.length() + 64);
+		int start = 0;
+		int length = text.length();
+		while (start < length) {
+			int end = text.indexOf('\n', start);
+			end = end == -1 ? length : end + 1;
+			if (text.charAt(start) != '\n' && text.charAt(start) != '\r') {
+				sb.append(FILE_INDENT);
 			}
-		});
+			sb.append(text, start, end);
+			start = end;
+		}
+		return sb.toString();
+	}
 
-		String manifest = applyTemplate(stg.getInstanceOf("manifest"), manifestBean, context.getManifestEncoding(), null);
-		return manifest;
+	/**
+	 * Assembles the manifest from the stored fragments: the manifest rendered
+	 * without files is split around its empty <code>files</code> element and
+	 * the fragments are copied in between.
+	 */
+	private void writeStoredManifest(File manifestFile, ManifestBean manifestBean, String previousCreatedate,
+			String createdate) throws IOException {
+		storeResourceBeans(manifestBean.getFiles());
+
+		String frame = applyTemplate(context, manifestBean);
+		int pos = frame.lastIndexOf("<files/>");
+		if (pos == -1) {
+			throw new IOException("No files element in the rendered manifest");
+		}
+		String head = frame.substring(0, pos);
+		String tail = frame.substring(pos + "<files/>".length());
+
+		File tmpFile = new File(manifestFile.getParentFile(), manifestFile.getName() + ".tmp");
+		writeStoredManifest(tmpFile, head, tail);
+		if (ManifestUtils.contentEquals(manifestFile, tmpFile)) {
+			tmpFile.delete();
+			context.getLog().info("Manifest is up to date, keeping [" + manifestFile + "]");
+		} else {
+			if (previousCreatedate != null && createdate != null && !previousCreatedate.equals(createdate)) {
+				writeStoredManifest(tmpFile, replaceCreatedate(head, previousCreatedate, createdate), tail);
+			}
+			if (manifestFile.exists()) {
+				manifestFile.delete();
+			}
+			if (!tmpFile.renameTo(manifestFile)) {
+				throw new IOException("Unable to move [" + tmpFile + "] to [" + manifestFile + "]");
+			}
+		}
+		fragmentStore.save();
+	}
+
+	private void writeStoredManifest(File file, String head, String tail) throws IOException {
+		Charset charset = Charset.forName(getManifestCharset());
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel channel = out.getChannel();
+			if (fragments.isEmpty()) {
+				write(channel, charset.encode(head + "<files/>" + tail));
+			} else {
+				write(channel, charset.encode(head + "<files>\n"));
+				fragmentStore.transferTo(fragments, channel);
+				write(channel, charset.encode("\n" + FILES_INDENT + "</files>" + tail));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
 	}
 
 	protected String applyTemplate(StringTemplate template, Object data, String encoding, String xmlversion) {
@@ -650,19 +991,32 @@ public class ManifestGenerationTask extends AbstractModulePackagingTask {
 		return template.toString();
 	}
 
+	/**
+	 * Puts back the creation date of this build in a manifest rendered with the
+	 * previous one.
+	 */
+	private String replaceCreatedate(String manifest, String previousCreatedate, String createdate) {
+		String previousElement = "<createdate>" + previousCreatedate + "</createdate>";
+		int pos = manifest.indexOf(previousElement);
+		if (pos == -1) {
+			return manifest;
+		}
+		return new StringBuilder(manifest.length() + createdate.length()).append(manifest, 0, pos).append("<createdate>")
+				.append(createdate).append("</createdate>").append(manifest, pos + previousElement.length(), manifest.length())
+				.toString();
+	}
+
 	protected void writeFile(ModulePackagingContext context, String manifest) throws IOException {
 		File manifestFile = new File(context.getModuleDirectory(), "manifest.xml");
 		if (manifestFile.exists()) {
 			manifestFile.delete();
 		}
-		FileWriter writer = null;
+		// the same encoding the manifest declares and the up to date check compares in
+		FileOutputStream out = new FileOutputStream(manifestFile);
 		try {
-			writer = new FileWriter(manifestFile);
-			writer.write(manifest);
+			write(out.getChannel(), Charset.forName(getManifestCharset()).encode(manifest));
 		} finally {
-			if (writer != null) {
-				writer.close();
-			}
+			out.close();
 		}
 	}
 
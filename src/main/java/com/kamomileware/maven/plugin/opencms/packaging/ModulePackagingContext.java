@@ -2,6 +2,8 @@ package com.kamomileware.maven.plugin.opencms.packaging;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -14,7 +16,9 @@ import org.codehaus.plexus.util.FileUtils.FilterWrapper;
 
 import com.kamomileware.maven.plugin.opencms.ModuleResource;
 import com.kamomileware.maven.plugin.opencms.PlainEncodingConfig;
+import com.kamomileware.maven.plugin.opencms.util.FiletypeRegistry;
 import com.kamomileware.maven.plugin.opencms.util.ModuleStructure;
+import com.kamomileware.maven.plugin.opencms.util.TextEncodingDetector;
 
 /**
  * The packaging context.
@@ -165,6 +169,59 @@ public interface ModulePackagingContext
 
     String getManifestEncoding();
 
+    /**
+     * Number of manifest file entries kept in memory before the manifest
+     * generation spills them to disk.
+     *
+     * @return the threshold, 0 or less to keep every entry in memory
+     */
+    int getManifestSpillThreshold();
+
+    /**
+     * Whether the manifest generation keeps the rendered file entries in the
+     * work directory, rendering again only the changed ones in later builds.
+     */
+    boolean isManifestFragments();
+
+    /**
+     * Whether the manifest generation adds files with the same content as a
+     * previous one as its siblings, packaging a single copy.
+     */
+    boolean isDedupSiblings();
+
+    /**
+     * Excludes a file of the module directory from the module archive.
+     *
+     * @param path the path relative to the module directory
+     */
+    void excludeFromArchive(String path);
+
+    /**
+     * @return the paths excluded from the module archive by the packaging tasks
+     */
+    Set<String> getArchiveExclusions();
+
+    /**
+     * Whether the dependency jars are added to the module archive straight
+     * from their files instead of being copied to the module directory.
+     */
+    boolean isStreamLibraries();
+
+    /**
+     * Adds a file to the module archive without copying it to the module
+     * directory.
+     *
+     * @param file the file to add
+     * @param path the path of the entry, relative to the module directory
+     */
+    void addToArchive(File file, String path);
+
+    /**
+     * @return the files added to the module archive by the packaging tasks,
+     *         by path relative to the module directory
+     */
+    Map<String, File> getArchiveFiles();
+
     File getDescriptorsDirectory();
 
     void setDescriptorsDirectory(File directory);
@@ -185,4 +242,29 @@ public interface ModulePackagingContext
 
 	String getModuleSourceTargetDirectory();
 
+	/**
+	 * The jar of the module classes built for the <tt>lib</tt> directory in
+	 * this build, if any, to be reused as the attached classes artifact.
+	 *
+	 * @return the classes jar or <tt>null</tt>
+	 */
+	File getClassesArchive();
+
+	void setClassesArchive(File classesArchive);
+
+	/**
+	 * The registry resolving the OpenCms resource type of the module files.
+	 *
+	 * @return the file type registry, never <tt>null</tt>
+	 */
+	FiletypeRegistry getFiletypeRegistry();
+
+	/**
+	 * The detector of the encoding of the text files converted to ASCII,
+	 * caching its results in the work directory between builds.
+	 *
+	 * @return the encoding detector, never <tt>null</tt>
+	 */
+	TextEncodingDetector getEncodingDetector();
+
 }
@@ -20,7 +20,10 @@ package com.kamomileware.maven.plugin.opencms.packaging;
  */
 
 import com.kamomileware.maven.plugin.opencms.ModuleResource;
+import com.kamomileware.maven.plugin.opencms.PlainEncodingConfig;
+import com.kamomileware.maven.plugin.opencms.native2ascii.ConversionCache;
 import com.kamomileware.maven.plugin.opencms.native2ascii.Native2Ascii;
+import com.kamomileware.maven.plugin.opencms.util.ManifestUtils;
 import com.kamomileware.maven.plugin.opencms.util.PathSet;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -30,7 +33,14 @@ import org.codehaus.plexus.util.xml.XmlStreamReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Handles the project own resources, that is: <ul> <li>The list of web
@@ -101,7 +111,12 @@ public class ModuleProjectPackagingTask extends AbstractModulePackagingTask {
 					+ " does not exist.");
 		} else if (!context.getDescriptorsDirectory().getAbsolutePath().equals(context.getModuleDirectory().getPath())) {
 			try {
-				boolean n2aApply = context.isDescriptorsN2AApply();
+				// the manifest generation parses the properties and acl files
+				// in the descriptors encoding itself, so the conversion is
+				// only needed when other files are configured
+				PlainEncodingConfig n2aConfig = context.getDescriptorsN2AConfig();
+				boolean n2aApply = context.isDescriptorsN2AApply() && n2aConfig != null
+						&& n2aConfig.getIncludes() != null;
 
 				String copyTargetPrefix = n2aApply ? "manifest_native/" : "manifest/";
 				context.getLog().info("Copying module manifest descriptors resources[" + context.getDescriptorsDirectory() + "]");
@@ -119,7 +134,7 @@ public class ModuleProjectPackagingTask extends AbstractModulePackagingTask {
 					resource.setModuleWorkingPath(new File(context.getWorkDirectory(), "manifest"));
 					resource.setModuleTargetPath("manifest/");
 					resource.setN2aApply(true);
-					resource.setN2aConfig(context.getDescriptorsN2AConfig());
+					resource.setN2aConfig(n2aConfig);
 					native2AsciiTask.perform(context, resource);
 				}
 			} catch (IOException e) {
@@ -154,14 +169,11 @@ public class ModuleProjectPackagingTask extends AbstractModulePackagingTask {
 			if (!resource.getDirectory().equals(context.getModuleDirectory().getPath())) {
 
 				try {
-					copyResources(context, resource, resource.isN2aApply());
-
 					// Manage the native2ascii setting
 					if (resource.isN2aApply()) {
-						resource.setDirectory(new File(context.getWorkDirectory(), resourceFile.getName()).getAbsolutePath());
-						Native2Ascii native2AsciiTask = new Native2Ascii();
-						native2AsciiTask.setEncoding(resource.getN2aConfig() != null ? resource.getN2aConfig().getEncoding() : "default");
-						native2AsciiTask.perform(context, resource);
+						copyConvertedResources(context, resource);
+					} else {
+						copyResources(context, resource, false);
 					}
 				} catch (IOException e) {
 					throw new MojoExecutionException("Could not copy resource[" + resource.getDirectory() + "]", e);
@@ -187,16 +199,8 @@ public class ModuleProjectPackagingTask extends AbstractModulePackagingTask {
 					context.getModuleSourceExcludes());
 
 			try {
-				String prefix = context.getModuleSourceTargetDirectory();
-				if (prefix != null) {
-					if (StringUtils.equals(".", prefix) || StringUtils.equals("./", prefix)) {
-						prefix = null;
-					} else if (!prefix.endsWith("/")) {
-						prefix += "/";
-					}
-
-				}
-				copyFilesAndDirs(id, context, context.getModuleSourceDirectory(), sources, prefix, true, false);
+				copyFilesAndDirs(id, context, context.getModuleSourceDirectory(), sources, getModuleSourceTargetPrefix(context), true,
+						false);
 			} catch (IOException e) {
 				throw new MojoExecutionException("Could not copy webapp sources[" + context.getModuleDirectory().getAbsolutePath() + "]", e);
 			}
@@ -327,19 +331,7 @@ public class ModuleProjectPackagingTask extends AbstractModulePackagingTask {
 		context.getLog().info(
 				"Copying module resources [" + resource.getDirectory() + "] to [" + context.getModuleDirectory().getAbsolutePath() + "]");
 
-		String prefix = toWorkDir ? resourceDir.getName() + File.separator : "";
-		if (resource.getModuleTargetPath() != null && !resource.getModuleTargetPath().isEmpty()) {
-			// TODO make sure this thing is 100% safe
-			// MWAR-129 if targetPath is only a dot <targetPath>.</targetPath>
-			// or ./
-			// and the Resource is in a part of the warSourceDirectory the file
-			// from sources will override this
-			// that's we don't have to add the targetPath yep not nice but works
-			if (!StringUtils.equals(".", resource.getModuleTargetPath()) && !StringUtils.equals("./", resource.getModuleTargetPath())) {
-
-				prefix = resource.getModuleTargetPath() + File.separator;
-			}
-		}
+		String prefix = getTargetPrefix(resource, toWorkDir ? resourceDir.getName() + File.separator : "");
 
 		String[] fileNames = getFilesToCopy(resource);
 		for (int i = 0; i < fileNames.length; i++) {
@@ -373,4 +365,119 @@ public class ModuleProjectPackagingTask extends AbstractModulePackagingTask {
 		}
 	}
 
+	/**
+	 * Copies the module resources of a resource with native2ascii applied.
+	 * Each file is read once: the ones selected by the native2ascii
+	 * configuration are decoded in its encoding, filtered if enabled and
+	 * written escaped straight to the module directory, the rest are copied as
+	 * {@link #copyResources(ModulePackagingContext, ModuleResource, boolean)}
+	 * does.
+	 *
+	 * @param context
+	 *            the packaging context to use
+	 * @param resource
+	 *            the resource to copy
+	 * @throws IOException
+	 *             if an error occurred while copying the resources
+	 * @throws MojoExecutionException
+	 *             if an error occurred while retrieving the filter properties
+	 */
+	protected void copyConvertedResources(final ModulePackagingContext context, ModuleResource resource) throws IOException,
+			MojoExecutionException, MojoFailureException {
+		File resourceDir = new File(resource.getDirectory());
+		if (!resourceDir.exists()) {
+			context.getLog().warn(
+					"Not copying module moduleResources [" + resource.getDirectory() + "]: module directory["
+							+ context.getModuleDirectory().getAbsolutePath() + "] does not exist!");
+			return;
+		}
+
+		PlainEncodingConfig n2aConfig = resource.getN2aConfig();
+		final Charset charset = ManifestUtils.toCharset(n2aConfig != null ? n2aConfig.getEncoding() : null);
+		context.getLog().info(
+				"Copying and converting from " + charset + " module resources [" + resource.getDirectory() + "] to ["
+						+ context.getModuleDirectory().getAbsolutePath() + "]");
+
+		String prefix = getTargetPrefix(resource, "");
+		Set<String> filesToConvert = new HashSet<String>(Arrays.asList(new Native2Ascii().getFilesToConvert(n2aConfig, resourceDir)));
+		// the conversions not filtered are skipped when up to date, and run across a worker pool
+		final ConversionCache cache = new ConversionCache(ConversionCache.getFile(context.getWorkDirectory(), resourceDir),
+				"resources:" + charset.name() + ':' + resource.isFiltering());
+		List<Callable<Void>> conversions = new ArrayList<Callable<Void>>();
+		String[] fileNames = getFilesToCopy(resource);
+		for (int i = 0; i < fileNames.length; i++) {
+			final String targetFileName = prefix.concat(fileNames[i]);
+			final boolean filtered = resource.isFiltering() && !context.isNonFilteredExtension(fileNames[i]);
+
+			if (filesToConvert.contains(fileNames[i])) {
+				if (context.getModuleStructure().registerFile(id, targetFileName)) {
+					final File source = new File(resourceDir, fileNames[i]);
+					conversions.add(new Callable<Void>() {
+						public Void call() throws IOException {
+							convertIfChanged(context, cache, source, targetFileName, charset, filtered);
+							return null;
+						}
+					});
+				} else {
+					context.getLog().debug(
+							" - " + targetFileName + " wasn't copied because it has already been packaged (converted).");
+				}
+			} else if (filtered) {
+				copyFilteredFile(id, context, new File(resourceDir, fileNames[i]), targetFileName, false);
+			} else {
+				copyFile(id, context, new File(resourceDir, fileNames[i]), targetFileName, false);
+			}
+		}
+
+		Native2Ascii.runAll(conversions);
+		try {
+			cache.save();
+		} catch (IOException e) {
+			context.getLog().warn("Unable to save the native2ascii cache: " + e.getMessage());
+		}
+
+		String[] dirNames = getDirectoriesToCopy(resource);
+		for (int i = 0; i < dirNames.length; i++) {
+			File targetDir = new File(context.getModuleDirectory(), prefix.concat(dirNames[i]));
+			if (!targetDir.exists()) {
+				targetDir.mkdirs();
+			}
+		}
+	}
+
+	/**
+	 * Converts a resource file unless it isn't filtered and its target is up
+	 * to date, recording the checksum of the converted ones. The files copied
+	 * as is, being pure ASCII, have no checksum and are only skipped by their
+	 * timestamp.
+	 */
+	private void convertIfChanged(ModulePackagingContext context, ConversionCache cache, File source, String targetFileName,
+			Charset charset, boolean filtered) throws IOException {
+		if (!filtered && cache.isUpToDate(targetFileName, source, new File(context.getModuleDirectory(), targetFileName))) {
+			context.getLog().debug(" = " + targetFileName + " is up to date.");
+			return;
+		}
+		String checksum = convertFile(context, source, targetFileName, charset, filtered);
+		if (checksum != null && !filtered) {
+			cache.put(targetFileName, checksum);
+		}
+	}
+
+	private String getTargetPrefix(ModuleResource resource, String defaultPrefix) {
+		String prefix = defaultPrefix;
+		if (resource.getModuleTargetPath() != null && !resource.getModuleTargetPath().isEmpty()) {
+			// TODO make sure this thing is 100% safe
+			// MWAR-129 if targetPath is only a dot <targetPath>.</targetPath>
+			// or ./
+			// and the Resource is in a part of the warSourceDirectory the file
+			// from sources will override this
+			// that's we don't have to add the targetPath yep not nice but works
+			if (!StringUtils.equals(".", resource.getModuleTargetPath()) && !StringUtils.equals("./", resource.getModuleTargetPath())) {
+
+				prefix = resource.getModuleTargetPath() + File.separator;
+			}
+		}
+		return prefix;
+	}
+
 }
@@ -0,0 +1,150 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Computes several digests of an archive at once, either while it's being
+ * written, through {@link #tee(OutputStream)}, or reading it a single time,
+ * and writes them to sidecar files next to it, named after the archive and
+ * the algorithm, as <tt>module.zip.sha256</tt>.
+ * <p>
+ * An instance computes the digests of a single archive.
+ * </p>
+ */
+public class ArchiveDigests {
+
+	private final String[] algorithms;
+
+	private final MessageDigest[] digests;
+
+	/**
+	 * Creates the digests of the specified algorithms.
+	 *
+	 * @param algorithms
+	 *            the algorithms, as <tt>SHA-256</tt>
+	 * @throws NoSuchAlgorithmException
+	 *             if an algorithm is not available
+	 */
+	public ArchiveDigests(String[] algorithms) throws NoSuchAlgorithmException {
+		this.algorithms = algorithms.clone();
+		this.digests = new MessageDigest[algorithms.length];
+		for (int i = 0; i < algorithms.length; i++) {
+			digests[i] = MessageDigest.getInstance(algorithms[i]);
+		}
+	}
+
+	/**
+	 * Returns a stream writing to the specified one and updating the digests
+	 * with the bytes written.
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @return the digesting stream
+	 */
+	public OutputStream tee(OutputStream out) {
+		return new FilterOutputStream(out) {
+			public void write(int b) throws IOException {
+				out.write(b);
+				for (MessageDigest digest : digests) {
+					digest.update((byte) b);
+				}
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				update(b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * Updates the digests with the content of a file, read once for all of
+	 * them.
+	 *
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public void update(File file) throws IOException {
+		final byte[] buffer = new byte[65536];
+		final InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes each digest, in hexadecimal, to its sidecar file of the
+	 * archive.
+	 *
+	 * @param archive
+	 *            the archive the digests were computed for
+	 * @return the sidecar files, in the order of the algorithms
+	 * @throws IOException
+	 *             if a file can't be written
+	 */
+	public List<File> writeSidecars(File archive) throws IOException {
+		final List<File> sidecars = new ArrayList<File>(algorithms.length);
+		for (int i = 0; i < algorithms.length; i++) {
+			final File sidecar = getSidecar(archive, algorithms[i]);
+			final Writer writer = new OutputStreamWriter(new FileOutputStream(sidecar), "US-ASCII");
+			try {
+				writer.write(ChecksumUtils.toHex(digests[i].digest()));
+			} finally {
+				writer.close();
+			}
+			sidecars.add(sidecar);
+		}
+		return sidecars;
+	}
+
+	/**
+	 * Returns the sidecar file of an archive for the specified algorithm.
+	 *
+	 * @param archive
+	 *            the archive
+	 * @param algorithm
+	 *            the algorithm
+	 * @return the sidecar file
+	 */
+	public static File getSidecar(File archive, String algorithm) {
+		return new File(archive.getPath() + "." + getExtension(algorithm));
+	}
+
+	/**
+	 * Returns the extension of the sidecar files of an algorithm:
+	 * <tt>sha256</tt> for <tt>SHA-256</tt>.
+	 *
+	 * @param algorithm
+	 *            the algorithm
+	 * @return the extension
+	 */
+	public static String getExtension(String algorithm) {
+		return algorithm.replace("-", "").toLowerCase(Locale.ENGLISH);
+	}
+
+	private void update(byte[] b, int off, int len) {
+		for (MessageDigest digest : digests) {
+			digest.update(b, off, len);
+		}
+	}
+}
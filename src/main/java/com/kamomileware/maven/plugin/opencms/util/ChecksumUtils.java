@@ -0,0 +1,67 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Checksums of files, and the hexadecimal form of digests.
+ */
+public class ChecksumUtils {
+
+	/**
+	 * Returns the CRC-32 of a file, reading it with a buffer of its own.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the CRC-32 of the content of the file
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static long crc32(File file) throws IOException {
+		return crc32(file, new byte[8192]);
+	}
+
+	/**
+	 * Returns the CRC-32 of a file, reading it with the specified buffer.
+	 *
+	 * @param file
+	 *            the file
+	 * @param buffer
+	 *            the buffer to read the file with
+	 * @return the CRC-32 of the content of the file
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static long crc32(File file, byte[] buffer) throws IOException {
+		final CRC32 crc = new CRC32();
+		final InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				crc.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the bytes of a digest in lower case hexadecimal, two digits
+	 * per byte.
+	 *
+	 * @param bytes
+	 *            the bytes of the digest
+	 * @return the hexadecimal form of the bytes
+	 */
+	public static String toHex(byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -21,8 +21,16 @@ package com.kamomileware.maven.plugin.opencms.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
 
+import org.apache.maven.archiver.ManifestConfiguration;
+import org.apache.maven.archiver.ManifestSection;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.archiver.MavenArchiver;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -30,6 +38,7 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.jar.JarArchiver;
 import org.codehaus.plexus.archiver.jar.ManifestException;
+import org.codehaus.plexus.util.FileUtils;
 
 /**
  * Packages the content of the classes directory.
@@ -89,6 +98,254 @@ public class ClassesPackager
         }
     }
 
+    /**
+     * Package the classes and keep the fingerprint of the classes directory
+     * and of the created archive in <tt>stampFile</tt>, so a later build can
+     * find it up to date.
+     *
+     * When the archive of the previous build is still there and neither the
+     * project nor the archive configuration changed since, the archive is
+     * updated with an {@link IncrementalJarWriter} instead of being created
+     * again, unless it has an index, which lists the packages of the classes.
+     *
+     * @param classesDirectory     the classes directory
+     * @param targetFile           the target file
+     * @param jarArchiver          the jar archiver to use
+     * @param project              the related project
+     * @param archiveConfiguration the archive configuration to use
+     * @param stampFile            the file keeping the fingerprint
+     * @throws MojoExecutionException if an error occurred while creating the archive
+     * @see #isUpToDate(File, File, MavenProject, MavenArchiveConfiguration, File)
+     */
+    public void packageClasses( File classesDirectory, File targetFile, JarArchiver jarArchiver, MavenProject project,
+                                MavenArchiveConfiguration archiveConfiguration, File stampFile )
+        throws MojoExecutionException
+    {
+        final String configuration = getConfigurationFingerprint( project, archiveConfiguration );
+        final boolean updatable = isUpdatable( targetFile, archiveConfiguration, configuration, stampFile );
+        stampFile.delete();
+        boolean updated = false;
+        if ( updatable )
+        {
+            try
+            {
+                new IncrementalJarWriter( classesDirectory, archiveConfiguration == null
+                    || archiveConfiguration.isCompress() ).update( targetFile );
+                updated = true;
+            }
+            catch ( IOException e )
+            {
+                // the archive is created from scratch instead
+                targetFile.delete();
+            }
+        }
+        if ( !updated )
+        {
+            packageClasses( classesDirectory, targetFile, jarArchiver, project, archiveConfiguration );
+        }
+        try
+        {
+            stampFile.getParentFile().mkdirs();
+            FileUtils.fileWrite( stampFile, "UTF-8", getFingerprint( classesDirectory, targetFile, configuration ) );
+        }
+        catch ( IOException e )
+        {
+            // without a stamp the archive is just created again next time
+            stampFile.delete();
+        }
+    }
+
+    /**
+     * Whether the archive created by a previous build is up to date: no file
+     * of the classes directory was added, removed or modified since, nor the
+     * project, its coordinates, the archive configuration or the archive
+     * itself.
+     *
+     * @param classesDirectory     the classes directory
+     * @param targetFile           the target file
+     * @param project              the related project
+     * @param archiveConfiguration the archive configuration to use
+     * @param stampFile            the file keeping the fingerprint
+     * @return true if the archive doesn't need to be created again
+     */
+    public boolean isUpToDate( File classesDirectory, File targetFile, MavenProject project,
+                               MavenArchiveConfiguration archiveConfiguration, File stampFile )
+    {
+        if ( !targetFile.isFile() || !stampFile.isFile() )
+        {
+            return false;
+        }
+        try
+        {
+            return FileUtils.fileRead( stampFile, "UTF-8" ).equals(
+                getFingerprint( classesDirectory, targetFile, getConfigurationFingerprint( project, archiveConfiguration ) ) );
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the archive is the one of the previous build and its
+     * configuration didn't change since, so the manifest and the descriptors
+     * of the archive are still right. An archive with an index is never
+     * updated, since the index may not list the packages of the classes
+     * anymore.
+     */
+    private boolean isUpdatable( File targetFile, MavenArchiveConfiguration archiveConfiguration,
+                                 String configuration, File stampFile )
+    {
+        if ( !targetFile.isFile() || !stampFile.isFile()
+            || ( archiveConfiguration != null && archiveConfiguration.isIndex() ) )
+        {
+            return false;
+        }
+        try
+        {
+            final String[] stamp = FileUtils.fileRead( stampFile, "UTF-8" ).split( ":" );
+            return stamp.length == 5
+                && stamp[2].equals( configuration )
+                && stamp[3].equals( String.valueOf( targetFile.length() ) )
+                && stamp[4].equals( String.valueOf( targetFile.lastModified() ) );
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the file of the work directory keeping the fingerprint of the
+     * specified archive.
+     *
+     * @param workDirectory the work directory
+     * @param targetFile    the archive
+     * @return the stamp file
+     */
+    public static File getStampFile( File workDirectory, File targetFile )
+    {
+        return new File( workDirectory, "classes-" + Integer.toHexString( targetFile.getAbsolutePath().hashCode() )
+            + ".stamp" );
+    }
+
+    private String getFingerprint( File classesDirectory, File targetFile, String configuration )
+    {
+        final CRC32 crc = new CRC32();
+        final int count = addFingerprint( crc, classesDirectory, "" );
+        return Long.toHexString( crc.getValue() ) + ":" + count + ":" + configuration + ":" + targetFile.length() + ":"
+            + targetFile.lastModified();
+    }
+
+    /**
+     * Returns the fingerprint of everything besides the classes that ends up
+     * in the archive: the coordinates of the project, the content of its
+     * project file and the archive configuration, from which the manifest and
+     * the Maven descriptors are built.
+     */
+    private String getConfigurationFingerprint( MavenProject project, MavenArchiveConfiguration archiveConfiguration )
+    {
+        final CRC32 crc = new CRC32();
+        update( crc, project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion() + "\n" );
+        update( crc, Long.toHexString( getChecksum( project.getFile() ) ) + "\n" );
+        if ( archiveConfiguration != null )
+        {
+            update( crc, archiveConfiguration.isCompress() + ":" + archiveConfiguration.isIndex() + ":"
+                + archiveConfiguration.isAddMavenDescriptor() + ":" + describe( archiveConfiguration.getManifestFile() )
+                + ":" + describe( archiveConfiguration.getPomPropertiesFile() ) + "\n" );
+            final ManifestConfiguration manifest = archiveConfiguration.getManifest();
+            if ( manifest != null )
+            {
+                update( crc, manifest.getMainClass() + ":" + manifest.getPackageName() + ":" + manifest.isAddExtensions()
+                    + ":" + manifest.isAddDefaultImplementationEntries() + ":"
+                    + manifest.isAddDefaultSpecificationEntries() + ":" + manifest.isAddClasspath() + ":"
+                    + manifest.getClasspathPrefix() + ":" + manifest.getClasspathLayoutType() + ":"
+                    + manifest.getCustomClasspathLayout() + "\n" );
+                if ( manifest.isAddClasspath() && project.getArtifacts() != null )
+                {
+                    // the class path of the manifest is built from the dependencies
+                    final Set<String> artifacts = new TreeSet<String>();
+                    for ( Object artifact : project.getArtifacts() )
+                    {
+                        artifacts.add( ( (Artifact) artifact ).getId() );
+                    }
+                    update( crc, artifacts + "\n" );
+                }
+            }
+            if ( archiveConfiguration.getManifestEntries() != null )
+            {
+                update( crc, new TreeMap<Object, Object>( archiveConfiguration.getManifestEntries() ) + "\n" );
+            }
+            if ( archiveConfiguration.getManifestSections() != null )
+            {
+                for ( Object section : archiveConfiguration.getManifestSections() )
+                {
+                    final ManifestSection manifestSection = (ManifestSection) section;
+                    update( crc, manifestSection.getName() + ":" + ( manifestSection.getManifestEntries() == null ? ""
+                        : new TreeMap<Object, Object>( manifestSection.getManifestEntries() ) ) + "\n" );
+                }
+            }
+        }
+        return Long.toHexString( crc.getValue() );
+    }
+
+    private static String describe( File file )
+    {
+        return file == null ? "" : file.getPath() + "\0" + file.length() + "\0" + file.lastModified();
+    }
+
+    private static long getChecksum( File file )
+    {
+        if ( file == null || !file.isFile() )
+        {
+            return 0;
+        }
+        try
+        {
+            return ChecksumUtils.crc32( file );
+        }
+        catch ( IOException e )
+        {
+            // can't tell whether it changed, so never up to date
+            return System.nanoTime();
+        }
+    }
+
+    private int addFingerprint( CRC32 crc, File directory, String prefix )
+    {
+        final File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            return 0;
+        }
+        Arrays.sort( files );
+        int count = 0;
+        for ( File file : files )
+        {
+            final String path = prefix + file.getName();
+            if ( file.isDirectory() )
+            {
+                count += addFingerprint( crc, file, path + "/" );
+            }
+            else
+            {
+                update( crc, path + "\0" + file.length() + "\0" + file.lastModified() + "\n" );
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void update( CRC32 crc, String value )
+    {
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            crc.update( c >> 8 );
+            crc.update( c );
+        }
+    }
+
     /**
      * Returns the classes directory from the specified module directory.
      *
@@ -36,6 +36,8 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.plugin.MojoFailureException;
 import org.safehaus.uuid.EthernetAddress;
@@ -56,6 +58,11 @@ import org.safehaus.uuid.UUIDGenerator;
  * (without using JNI), the MAC address has to be provided first
  * by using the static {@link #init(String)} method.<p>
  *
+ * Time based UUIDs are produced by a generator private to this class that keeps
+ * its state per thread: every thread owns a distinct clock sequence (and, once the
+ * 14 bit clock sequence space is exhausted, a distinct node), so no two threads can
+ * ever produce the same UUID and no lock is taken while generating.<p>
+ *
  * This class is just a facade wrapper for the "real" UUID implementation.<p>
  *
  * @author  Alexander Kandzior
@@ -68,8 +75,32 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
 
     /** The log object for this class. */
 
-    /** Ethernet address of the server machine. */
-    private static EthernetAddress m_ethernetAddress;
+    /** Offset between the UUID epoch (1582-10-15) and the unix epoch, in 100 ns intervals. */
+    private static final long GREGORIAN_OFFSET = 0x01B21DD213814000L;
+
+    /** Hexadecimal digits used to format UUIDs. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Multicast bit of the node, set on the derived nodes so they can't clash with hardware addresses. */
+    private static final long NODE_MULTICAST = 0x010000000000L;
+
+    /** Marker for a node not yet initialized. */
+    private static final long NODE_UNSET = -1L;
+
+    /** Length of the String representation of an UUID. */
+    public static final int STRING_LENGTH = 36;
+
+    /** Base clock sequence, thread slots are assigned consecutive values from here. */
+    private static final int m_clockSeqBase = new Random().nextInt(0x4000);
+
+    /** Counter of the thread slots handed out by the time based generator. */
+    private static final AtomicInteger m_generatorSlots = new AtomicInteger();
+
+    /** Per thread state of the time based generator. */
+    private static final ThreadLocal<GeneratorState> m_generatorState = new ThreadLocal<GeneratorState>();
+
+    /** Ethernet address of the server machine, as the 48 bit node of the time based UUIDs. */
+    private static volatile long m_node = NODE_UNSET;
 
     /** OpenCms UUID (name based uuid of "www.opencms.org" in the dns name space). */
     private static UUID m_opencmsUUID = UUIDGenerator.getInstance().generateNameBasedUUID(
@@ -77,13 +108,16 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
         "www.opencms.org");
 
     /** Constant for the null UUID. */
-    private static final CmsUUID NULL_UUID = new CmsUUID(UUID.getNullUUID());
+    private static final CmsUUID NULL_UUID = new CmsUUID(0L, 0L);
 
     /** Serial version UID required for safe serialization. */
     private static final long serialVersionUID = 1736324454709298676L;
 
-    /** Internal UUID implementation. */
-    private transient UUID m_uuid;
+    /** The most significant 64 bits of the UUID. */
+    private transient long m_mostSigBits;
+
+    /** The least significant 64 bits of the UUID. */
+    private transient long m_leastSigBits;
 
     /**
      * Creates a new UUID.
@@ -94,13 +128,24 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
      */
     public CmsUUID() throws MojoFailureException {
 
-        if (m_ethernetAddress == null) {
+        long node = m_node;
+        if (node == NODE_UNSET) {
             // if no ethernet address is available, generate a dummy
             // this is required because otherwise we can't ever de-serialize a CmsUUID outside of OpenCms,
             // since the empty constructor is called when the de-serialization takes place
-            init(getDummyEthernetAddress());
+            node = initDummyNode();
         }
-        m_uuid = UUIDGenerator.getInstance().generateTimeBasedUUID(m_ethernetAddress);
+        GeneratorState state = m_generatorState.get();
+        if ((state == null) || (state.m_baseNode != node)) {
+            state = new GeneratorState(node, m_generatorSlots.getAndIncrement());
+            m_generatorState.set(state);
+        }
+        long timestamp = state.nextTimestamp();
+        m_mostSigBits = ((timestamp & 0xFFFFFFFFL) << 32)
+            | (((timestamp >>> 32) & 0xFFFFL) << 16)
+            | ((timestamp >>> 48) & 0x0FFFL)
+            | 0x1000L;
+        m_leastSigBits = state.m_clockSeqAndNode;
     }
 
     /**
@@ -110,7 +155,20 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
      */
     public CmsUUID(byte[] data) {
 
-        m_uuid = new UUID(data);
+        m_mostSigBits = toLong(data, 0);
+        m_leastSigBits = toLong(data, 8);
+    }
+
+    /**
+     * Create a UUID based on its two 64 bit halves.<p>
+     *
+     * @param mostSigBits the most significant 64 bits of the UUID
+     * @param leastSigBits the least significant 64 bits of the UUID
+     */
+    public CmsUUID(long mostSigBits, long leastSigBits) {
+
+        m_mostSigBits = mostSigBits;
+        m_leastSigBits = leastSigBits;
     }
 
     /**
@@ -122,7 +180,7 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
     public CmsUUID(String uuid)
     throws NumberFormatException {
 
-        m_uuid = new UUID(uuid);
+        this(new UUID(uuid));
     }
 
     /**
@@ -132,7 +190,7 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
      */
     private CmsUUID(UUID uuid) {
 
-        m_uuid = uuid;
+        this(uuid.toByteArray());
     }
 
     /**
@@ -210,7 +268,7 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
     public static void init(String ethernetAddress) throws MojoFailureException {
 
         try {
-            m_ethernetAddress = new EthernetAddress(ethernetAddress);
+            m_node = parseNode(new EthernetAddress(ethernetAddress).toString());
         } catch (Exception e) {
             throw new MojoFailureException("Invalid ethernet address: " + ethernetAddress, e);
         }
@@ -247,6 +305,60 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
         return new CmsUUID(UUID.valueOf(uuid));
     }
 
+    /**
+     * Initializes the node with a dummy ethernet address, unless another thread
+     * or {@link #init(String)} already did it.<p>
+     *
+     * @return the node to use
+     * @throws MojoFailureException in case the dummy address is not valid
+     */
+    private static synchronized long initDummyNode() throws MojoFailureException {
+
+        if (m_node == NODE_UNSET) {
+            init(getDummyEthernetAddress());
+        }
+        return m_node;
+    }
+
+    /**
+     * Parses the 48 bit node out of an ethernet address String like '00:c0:f0:3d:5b:7c'.<p>
+     *
+     * @param address the ethernet address
+     * @return the node value
+     */
+    private static long parseNode(String address) {
+
+        long node = 0;
+        int digits = 0;
+        for (int i = 0; i < address.length(); i++) {
+            int digit = Character.digit(address.charAt(i), 16);
+            if (digit >= 0) {
+                node = (node << 4) | digit;
+                digits++;
+            }
+        }
+        if (digits != 12) {
+            throw new NumberFormatException("Invalid ethernet address: " + address);
+        }
+        return node;
+    }
+
+    /**
+     * Reads 8 bytes of the array in network byte order.<p>
+     *
+     * @param data the bytes
+     * @param offset the index of the first byte
+     * @return the long value
+     */
+    private static long toLong(byte[] data, int offset) {
+
+        long value = 0;
+        for (int i = offset; i < (offset + 8); i++) {
+            value = (value << 8) | (data[i] & 0xFF);
+        }
+        return value;
+    }
+
     /**
      * Creates a clone of this CmsUUID.<p>
      *
@@ -258,7 +370,7 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
         if (this == NULL_UUID) {
             return NULL_UUID;
         }
-        return new CmsUUID((UUID)m_uuid.clone());
+        return new CmsUUID(m_mostSigBits, m_leastSigBits);
     }
 
     /**
@@ -267,11 +379,28 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
     public int compareTo(Object obj) {
 
         if (obj instanceof CmsUUID) {
-            return m_uuid.compareTo(((CmsUUID)obj).m_uuid);
+            CmsUUID other = (CmsUUID)obj;
+            // unsigned comparison, as the byte wise one of the UUID implementation
+            int result = compareUnsigned(m_mostSigBits, other.m_mostSigBits);
+            return (result != 0) ? result : compareUnsigned(m_leastSigBits, other.m_leastSigBits);
         }
         return 0;
     }
 
+    /**
+     * Compares two longs as unsigned values.<p>
+     *
+     * @param x the first value
+     * @param y the second value
+     * @return the comparison result
+     */
+    private static int compareUnsigned(long x, long y) {
+
+        x += Long.MIN_VALUE;
+        y += Long.MIN_VALUE;
+        return (x < y) ? -1 : ((x == y) ? 0 : 1);
+    }
+
     /**
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -282,11 +411,32 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
             return true;
         }
         if (obj instanceof CmsUUID) {
-            return ((CmsUUID)obj).m_uuid.equals(m_uuid);
+            CmsUUID other = (CmsUUID)obj;
+            return (other.m_mostSigBits == m_mostSigBits) && (other.m_leastSigBits == m_leastSigBits);
         }
         return false;
     }
 
+    /**
+     * Returns the most significant 64 bits of this UUID.<p>
+     *
+     * @return the most significant 64 bits
+     */
+    public long getMostSignificantBits() {
+
+        return m_mostSigBits;
+    }
+
+    /**
+     * Returns the least significant 64 bits of this UUID.<p>
+     *
+     * @return the least significant 64 bits
+     */
+    public long getLeastSignificantBits() {
+
+        return m_leastSigBits;
+    }
+
     /**
      * Returns the String representation of this UUID, same as {@link #toString()}.<p>
      *
@@ -307,7 +457,8 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
     @Override
     public int hashCode() {
 
-        return m_uuid.hashCode();
+        long hilo = m_mostSigBits ^ m_leastSigBits;
+        return ((int)(hilo >> 32)) ^ (int)hilo;
     }
 
     /**
@@ -320,7 +471,7 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
         if (this == NULL_UUID) {
             return true;
         }
-        return m_uuid.equals(UUID.getNullUUID());
+        return (m_mostSigBits == 0L) && (m_leastSigBits == 0L);
     }
 
     /**
@@ -350,15 +501,9 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
 //            if (LOG.isDebugEnabled()) {
 //                LOG.debug(Messages.get().getBundle().key(Messages.LOG_READ_UUID_1, o));
 //            }
-            m_uuid = new UUID((String)o);
-        }
-
-        // log an error if the uuid could not be deserialized
-        if (m_uuid == null) {
-            // UUID cannot be deserialized
-//            if (LOG.isDebugEnabled()) {
-//                LOG.debug(Messages.get().getBundle().key(Messages.LOG_ERR_READ_UUID_0));
-//            }
+            byte[] data = new UUID((String)o).toByteArray();
+            m_mostSigBits = toLong(data, 0);
+            m_leastSigBits = toLong(data, 8);
         }
     }
 
@@ -369,7 +514,12 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
      */
     public byte[] toByteArray() {
 
-        return m_uuid.toByteArray();
+        byte[] data = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            data[i] = (byte)(m_mostSigBits >>> (56 - (i * 8)));
+            data[i + 8] = (byte)(m_leastSigBits >>> (56 - (i * 8)));
+        }
+        return data;
     }
 
     /**
@@ -378,7 +528,50 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
     @Override
     public String toString() {
 
-        return m_uuid.toString();
+        char[] chars = new char[STRING_LENGTH];
+        format(m_mostSigBits, m_leastSigBits, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Writes the String representation of the UUID given by its two halves into the
+     * char array, starting at the given offset.<p>
+     *
+     * @param mostSigBits the most significant 64 bits of the UUID
+     * @param leastSigBits the least significant 64 bits of the UUID
+     * @param chars the target array, with at least {@link #STRING_LENGTH} chars from the offset
+     * @param offset the index of the first char to write
+     */
+    public static void format(long mostSigBits, long leastSigBits, char[] chars, int offset) {
+
+        int pos = offset;
+        pos = formatHex(mostSigBits >>> 32, 8, chars, pos);
+        chars[pos++] = '-';
+        pos = formatHex(mostSigBits >>> 16, 4, chars, pos);
+        chars[pos++] = '-';
+        pos = formatHex(mostSigBits, 4, chars, pos);
+        chars[pos++] = '-';
+        pos = formatHex(leastSigBits >>> 48, 4, chars, pos);
+        chars[pos++] = '-';
+        formatHex(leastSigBits, 12, chars, pos);
+    }
+
+    /**
+     * Writes the lowest <code>digits</code> hexadecimal digits of the value.<p>
+     *
+     * @param value the value
+     * @param digits the number of digits
+     * @param chars the target array
+     * @param offset the index of the first char to write
+     * @return the index after the last char written
+     */
+    private static int formatHex(long value, int digits, char[] chars, int offset) {
+
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = HEX_DIGITS[(int)(value & 0xF)];
+            value >>>= 4;
+        }
+        return offset + digits;
     }
 
     /**
@@ -392,4 +585,58 @@ public final class CmsUUID extends Object implements Serializable, Cloneable, Co
 //        }
         out.writeObject(toString());
     }
+
+    /**
+     * State of the time based generator owned by a single thread.<p>
+     *
+     * Each state gets its own slot: the slot selects the clock sequence and, past the
+     * first 2^14 slots, a derived node, so the (clock sequence, node) pair of a state
+     * is never shared with another state of this class loader.<p>
+     */
+    private static final class GeneratorState {
+
+        /** The node the state was created for. */
+        final long m_baseNode;
+
+        /** Precomputed least significant bits: variant, clock sequence and node. */
+        final long m_clockSeqAndNode;
+
+        /** Last timestamp handed out by this state. */
+        long m_lastTimestamp;
+
+        /**
+         * Creates the state for the given slot.<p>
+         *
+         * @param baseNode the node of the machine
+         * @param slot the slot assigned to the state
+         */
+        GeneratorState(long baseNode, int slot) {
+
+            m_baseNode = baseNode;
+            long node = baseNode;
+            int nodeVariant = slot >>> 14;
+            if (nodeVariant != 0) {
+                node = (baseNode ^ nodeVariant) | NODE_MULTICAST;
+            }
+            long clockSeq = (m_clockSeqBase + slot) & 0x3FFFL;
+            m_clockSeqAndNode = ((clockSeq | 0x8000L) << 48) | (node & 0xFFFFFFFFFFFFL);
+        }
+
+        /**
+         * Returns the next timestamp, in 100 ns intervals since the UUID epoch, strictly
+         * greater than any previously returned by this state.<p>
+         *
+         * @return the timestamp
+         */
+        long nextTimestamp() {
+
+            long timestamp = (System.currentTimeMillis() * 10000L) + GREGORIAN_OFFSET;
+            if (timestamp <= m_lastTimestamp) {
+                // more than one UUID per 100 ns or clock set back: borrow from the next interval
+                timestamp = m_lastTimestamp + 1;
+            }
+            m_lastTimestamp = timestamp;
+            return timestamp;
+        }
+    }
 }
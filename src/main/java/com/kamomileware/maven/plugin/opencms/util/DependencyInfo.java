@@ -35,6 +35,12 @@ public class DependencyInfo
 
     private String targetFileName;
 
+    private String checksum;
+
+    private long fileLength;
+
+    private long fileLastModified;
+
     public DependencyInfo( )
     {
         this.dependency = null;
@@ -81,6 +87,53 @@ public class DependencyInfo
         this.targetFileName = targetFileName;
     }
 
+    /**
+     * Returns the SHA-1 checksum of the file of the dependency when it was
+     * last packaged. If it wasn't packaged, returns <tt>null</tt>.
+     *
+     * @return the checksum, in hexadecimal, or <tt>null</tt>
+     */
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * Records the checksum of the file of the dependency, along with the
+     * length and the modification time it had, so the checksum can be reused
+     * while the file isn't touched.
+     *
+     * @param checksum the SHA-1 checksum, in hexadecimal
+     * @param fileLength the length of the file
+     * @param fileLastModified the modification time of the file
+     */
+    public void setChecksum( String checksum, long fileLength, long fileLastModified )
+    {
+        this.checksum = checksum;
+        this.fileLength = fileLength;
+        this.fileLastModified = fileLastModified;
+    }
+
+    /**
+     * Returns the length of the file the checksum was computed for.
+     *
+     * @return the length of the file
+     */
+    public long getFileLength()
+    {
+        return fileLength;
+    }
+
+    /**
+     * Returns the modification time of the file the checksum was computed for.
+     *
+     * @return the modification time of the file
+     */
+    public long getFileLastModified()
+    {
+        return fileLastModified;
+    }
+
     public boolean equals( Object o )
     {
         if ( this == o )
@@ -0,0 +1,208 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import com.kamomileware.maven.plugin.opencms.ManifestBean.Filetype;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Immutable registry resolving the OpenCms resource type of the module files.
+ * <p>
+ * The extension table is built once, from the default extensions plus the ones
+ * configured in the POM, into an open addressing table keyed by the lower case
+ * extension. File names are hashed and compared in place, ignoring case, so the
+ * lookup of a type doesn't allocate. Custom OpenCms resource types are held by
+ * their own {@link ResourceType} instances instead of a shared mutable constant,
+ * so a registry can safely be used from several threads.
+ * </p>
+ */
+public final class FiletypeRegistry {
+
+	private static final ResourceType[] STANDARD_TYPES;
+
+	private static final Map<String, Filetype> DEFAULT_EXTENSIONS = new LinkedHashMap<String, Filetype>();
+
+	static {
+		Filetype[] filetypes = Filetype.values();
+		STANDARD_TYPES = new ResourceType[filetypes.length];
+		for (Filetype filetype : filetypes) {
+			STANDARD_TYPES[filetype.ordinal()] = new ResourceType(filetype, filetype.name());
+		}
+
+		for (String extension : new String[] { "jpg", "jpeg", "png", "gif", "bmp", "tif", "tiff" }) {
+			DEFAULT_EXTENSIONS.put(extension, Filetype.image);
+		}
+		DEFAULT_EXTENSIONS.put("jsp", Filetype.jsp);
+		for (String extension : new String[] { "pdf", "zip", "class", "ppt", "doc", "xls", "jar", "db" }) {
+			DEFAULT_EXTENSIONS.put(extension, Filetype.binary);
+		}
+		DEFAULT_EXTENSIONS.put("sibling", Filetype.sibling);
+	}
+
+	/** Registry with the default extensions only. */
+	public static final FiletypeRegistry DEFAULT = new FiletypeRegistry(null);
+
+	private final Map<String, ResourceType> typesByName = new HashMap<String, ResourceType>();
+
+	private final char[][] keys;
+
+	private final ResourceType[] values;
+
+	private final int mask;
+
+	/**
+	 * Builds the registry from the default extensions and the given mappings,
+	 * which take precedence over the defaults.
+	 *
+	 * @param extensionTypes
+	 *            resource type names by file extension, may be <code>null</code>
+	 */
+	public FiletypeRegistry(Map<String, String> extensionTypes) {
+		for (ResourceType type : STANDARD_TYPES) {
+			typesByName.put(type.getName(), type);
+		}
+
+		Map<String, ResourceType> byExtension = new LinkedHashMap<String, ResourceType>();
+		for (Entry<String, Filetype> entry : DEFAULT_EXTENSIONS.entrySet()) {
+			byExtension.put(entry.getKey(), STANDARD_TYPES[entry.getValue().ordinal()]);
+		}
+		if (extensionTypes != null) {
+			for (Entry<String, String> entry : extensionTypes.entrySet()) {
+				String extension = entry.getKey().trim().toLowerCase(Locale.ENGLISH);
+				if (extension.startsWith(".")) {
+					extension = extension.substring(1);
+				}
+				String name = entry.getValue() != null ? entry.getValue().trim() : "";
+				if (extension.length() == 0 || name.length() == 0) {
+					throw new IllegalArgumentException("Invalid file type mapping: " + entry.getKey() + " -> "
+							+ entry.getValue());
+				}
+				ResourceType type = typesByName.get(name);
+				if (type == null) {
+					type = new ResourceType(Filetype.custom, name);
+					typesByName.put(name, type);
+				}
+				byExtension.put(extension, type);
+			}
+		}
+
+		int capacity = Integer.highestOneBit(Math.max(byExtension.size(), 1) * 4 - 1) << 1;
+		keys = new char[capacity][];
+		values = new ResourceType[capacity];
+		mask = capacity - 1;
+		for (Entry<String, ResourceType> entry : byExtension.entrySet()) {
+			char[] key = entry.getKey().toCharArray();
+			int slot = hash(entry.getKey(), 0, key.length) & mask;
+			while (keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = entry.getValue();
+		}
+	}
+
+	/**
+	 * Returns the resource type of a file by the extension of its name, the
+	 * whole name standing for the extension when it has no dot. Trailing dots
+	 * are ignored, so <code>foo.jar.</code> is a jar and <code>foo.</code>
+	 * has no extension. Unknown extensions are {@link Filetype#plain}.
+	 *
+	 * @param fileName
+	 *            the name of the file
+	 * @return the resource type, never <code>null</code>
+	 */
+	public ResourceType getTypeByFileName(String fileName) {
+		int end = fileName.length();
+		while (end > 0 && fileName.charAt(end - 1) == '.') {
+			end--;
+		}
+		int start = fileName.lastIndexOf('.', end - 1) + 1;
+		int slot = hash(fileName, start, end) & mask;
+		char[] key;
+		while ((key = keys[slot]) != null) {
+			if (matches(key, fileName, start, end)) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return STANDARD_TYPES[Filetype.plain.ordinal()];
+	}
+
+	/**
+	 * Returns the resource type with the given name, as set in the
+	 * <code>manifest.type</code> property of the resources. Names other than
+	 * the standard and configured types stand for custom types.
+	 *
+	 * @param name
+	 *            the OpenCms resource type name
+	 * @return the resource type
+	 */
+	public ResourceType getTypeByName(String name) {
+		ResourceType type = typesByName.get(name);
+		return type != null ? type : new ResourceType(Filetype.custom, name);
+	}
+
+	/**
+	 * Returns the resource type of the standard file type.
+	 *
+	 * @param filetype
+	 *            the file type
+	 * @return the resource type named as the file type
+	 */
+	public static ResourceType getStandardType(Filetype filetype) {
+		return STANDARD_TYPES[filetype.ordinal()];
+	}
+
+	private static int hash(String s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + Character.toLowerCase(s.charAt(i));
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean matches(char[] key, String s, int start, int end) {
+		if (key.length != end - start) {
+			return false;
+		}
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != Character.toLowerCase(s.charAt(start + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * An OpenCms resource type: the file type driving the manifest generation
+	 * and the name written to the manifest, which differs from the file type
+	 * name for custom types.
+	 */
+	public static final class ResourceType {
+
+		private final Filetype filetype;
+
+		private final String name;
+
+		ResourceType(Filetype filetype, String name) {
+			this.filetype = filetype;
+			this.name = name;
+		}
+
+		public Filetype getFiletype() {
+			return filetype;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,501 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Updates a jar of the classes directory created by a previous build, so
+ * only the changed files are compressed again.
+ * <p>
+ * The entries of the files whose length and CRC-32 are the same as in the
+ * jar are copied with their compressed data as is, the changed and added
+ * files are deflated, or stored when the archive is not compressed, and the
+ * entries of the removed files are dropped. The
+ * files are selected as the archiver selects them when adding the classes
+ * directory, so the default excludes apply. The
+ * manifest and the <tt>META-INF/maven</tt> descriptors written by the
+ * archiver are kept as they are, so the jar must be created again when the
+ * project configuration changes. Zip64 archives are not supported.
+ * </p>
+ */
+public class IncrementalJarWriter {
+
+	private static final int LOCAL_HEADER_SIG = 0x04034b50;
+
+	private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+
+	private static final int END_SIG = 0x06054b50;
+
+	private static final int END_LENGTH = 22;
+
+	private static final int FLAG_DATA_DESCRIPTOR = 8;
+
+	private static final int FLAG_UTF8 = 0x800;
+
+	private static final int METHOD_STORED = 0;
+
+	private static final int METHOD_DEFLATED = 8;
+
+	// unix, zip 2.0, as the archiver writes them
+	private static final int VERSION_MADE_BY = 0x0314;
+
+	private static final int VERSION_NEEDED = 20;
+
+	private static final int FILE_ATTRIBUTES = 0100644 << 16;
+
+	private static final int DIR_ATTRIBUTES = (040755 << 16) | 0x10;
+
+	private final File classesDirectory;
+
+	private final boolean compress;
+
+	private final byte[] buffer = new byte[65536];
+
+	private int reused;
+
+	private int compressed;
+
+	private int removed;
+
+	/**
+	 * Creates a writer for the specified classes directory, deflating the
+	 * entries it adds.
+	 *
+	 * @param classesDirectory
+	 *            the classes directory
+	 */
+	public IncrementalJarWriter(File classesDirectory) {
+		this(classesDirectory, true);
+	}
+
+	/**
+	 * Creates a writer for the specified classes directory.
+	 *
+	 * @param classesDirectory
+	 *            the classes directory
+	 * @param compress
+	 *            whether the entries added are deflated or stored, as the
+	 *            <tt>compress</tt> setting of the archive configuration
+	 */
+	public IncrementalJarWriter(File classesDirectory, boolean compress) {
+		this.classesDirectory = classesDirectory;
+		this.compress = compress;
+	}
+
+	/**
+	 * Updates the jar with the content of the classes directory. The jar is
+	 * replaced only once the update is complete.
+	 *
+	 * @param jarFile
+	 *            the jar to update
+	 * @throws IOException
+	 *             if the jar can't be read or written, or is not supported
+	 */
+	public void update(File jarFile) throws IOException {
+		final Map<String, File> files = collect();
+
+		final File tmpFile = new File(jarFile.getPath() + ".tmp");
+		final List<CentralEntry> written = new ArrayList<CentralEntry>();
+		final RandomAccessFile in = new RandomAccessFile(jarFile, "r");
+		try {
+			final ZipOutput out = new ZipOutput(new BufferedOutputStream(new FileOutputStream(tmpFile), buffer.length));
+			try {
+				for (CentralEntry entry : readCentralDirectory(in)) {
+					if (isGenerated(entry.name)) {
+						files.remove(entry.name);
+						written.add(copy(in, entry, out));
+						continue;
+					}
+					final File file = files.remove(entry.name);
+					if (file == null) {
+						removed++;
+					} else if (entry.name.endsWith("/") || (file.length() == entry.size && ChecksumUtils.crc32(file, buffer) == entry.crc)) {
+						written.add(copy(in, entry, out));
+						reused++;
+					} else {
+						written.add(add(entry.name, file, out));
+						compressed++;
+					}
+				}
+				for (Map.Entry<String, File> file : files.entrySet()) {
+					written.add(add(file.getKey(), file.getValue(), out));
+					compressed++;
+				}
+				writeCentralDirectory(written, out);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw e;
+		} finally {
+			in.close();
+		}
+
+		if (!jarFile.delete() || !tmpFile.renameTo(jarFile)) {
+			tmpFile.delete();
+			throw new IOException("Could not replace [" + jarFile + "]");
+		}
+	}
+
+	/**
+	 * @return the number of entries copied from the previous jar
+	 */
+	public int getReused() {
+		return reused;
+	}
+
+	/**
+	 * @return the number of entries of changed or added files
+	 */
+	public int getCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @return the number of entries of removed files
+	 */
+	public int getRemoved() {
+		return removed;
+	}
+
+	private static boolean isGenerated(String name) {
+		return name.equals("META-INF/") || name.equals("META-INF/MANIFEST.MF") || name.startsWith("META-INF/maven/");
+	}
+
+	/**
+	 * Returns the files and directories of the classes directory by entry
+	 * name, scanned with the default excludes like the archiver does.
+	 */
+	private Map<String, File> collect() {
+		final Map<String, File> files = new TreeMap<String, File>();
+		if (!classesDirectory.isDirectory()) {
+			return files;
+		}
+		final DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(classesDirectory);
+		scanner.addDefaultExcludes();
+		scanner.scan();
+		for (String path : scanner.getIncludedDirectories()) {
+			if (path.length() > 0) {
+				files.put(path.replace(File.separatorChar, '/') + "/", new File(classesDirectory, path));
+			}
+		}
+		for (String path : scanner.getIncludedFiles()) {
+			files.put(path.replace(File.separatorChar, '/'), new File(classesDirectory, path));
+		}
+		return files;
+	}
+
+	private List<CentralEntry> readCentralDirectory(RandomAccessFile in) throws IOException {
+		final long length = in.length();
+		long end = length - END_LENGTH;
+		final long min = Math.max(0, end - 0xffff);
+		while (end >= min) {
+			in.seek(end);
+			if (readInt(in) == END_SIG) {
+				break;
+			}
+			end--;
+		}
+		if (end < min) {
+			throw new ZipException("End of central directory not found");
+		}
+		in.seek(end + 10);
+		final int count = readShort(in);
+		in.skipBytes(4);
+		final long offset = readInt(in) & 0xffffffffL;
+		if (count == 0xffff || offset == 0xffffffffL) {
+			throw new ZipException("Zip64 archives are not supported");
+		}
+
+		final List<CentralEntry> entries = new ArrayList<CentralEntry>(count);
+		in.seek(offset);
+		for (int i = 0; i < count; i++) {
+			if (readInt(in) != CENTRAL_HEADER_SIG) {
+				throw new ZipException("Invalid central directory entry");
+			}
+			final CentralEntry entry = new CentralEntry();
+			entry.versionMadeBy = readShort(in);
+			entry.versionNeeded = readShort(in);
+			entry.flags = readShort(in);
+			entry.method = readShort(in);
+			entry.time = readInt(in);
+			entry.crc = readInt(in) & 0xffffffffL;
+			entry.compressedSize = readInt(in) & 0xffffffffL;
+			entry.size = readInt(in) & 0xffffffffL;
+			final int nameLength = readShort(in);
+			final int extraLength = readShort(in);
+			final int commentLength = readShort(in);
+			in.skipBytes(2);
+			entry.internalAttributes = readShort(in);
+			entry.externalAttributes = readInt(in);
+			entry.offset = readInt(in) & 0xffffffffL;
+			entry.nameBytes = new byte[nameLength];
+			in.readFully(entry.nameBytes);
+			entry.extra = new byte[extraLength];
+			in.readFully(entry.extra);
+			entry.comment = new byte[commentLength];
+			in.readFully(entry.comment);
+			entry.name = new String(entry.nameBytes, "UTF-8");
+			if ((entry.flags & 1) != 0) {
+				throw new ZipException("Encrypted entries are not supported");
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Copies an entry of the previous jar with its compressed data.
+	 */
+	private CentralEntry copy(RandomAccessFile in, CentralEntry entry, ZipOutput out) throws IOException {
+		in.seek(entry.offset);
+		if (readInt(in) != LOCAL_HEADER_SIG) {
+			throw new ZipException("Invalid local header of " + entry.name);
+		}
+		in.seek(entry.offset + 26);
+		final int nameLength = readShort(in);
+		final int extraLength = readShort(in);
+		in.skipBytes(nameLength);
+		final byte[] localExtra = new byte[extraLength];
+		in.readFully(localExtra);
+
+		// the sizes are known, so the copy needs no data descriptor
+		entry.flags &= ~FLAG_DATA_DESCRIPTOR;
+		entry.offset = out.written;
+		writeLocalHeader(entry, localExtra, out);
+		long remaining = entry.compressedSize;
+		while (remaining > 0) {
+			final int read = (int) Math.min(buffer.length, remaining);
+			in.readFully(buffer, 0, read);
+			out.write(buffer, 0, read);
+			remaining -= read;
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds a new entry for a file or a directory.
+	 */
+	private CentralEntry add(String name, File file, ZipOutput out) throws IOException {
+		final CentralEntry entry = new CentralEntry();
+		entry.name = name;
+		entry.nameBytes = name.getBytes("UTF-8");
+		entry.extra = new byte[0];
+		entry.comment = new byte[0];
+		entry.versionMadeBy = VERSION_MADE_BY;
+		entry.versionNeeded = VERSION_NEEDED;
+		entry.flags = entry.nameBytes.length != name.length() ? FLAG_UTF8 : 0;
+		entry.time = toDosTime(file.lastModified());
+		entry.offset = out.written;
+
+		if (file.isDirectory()) {
+			entry.method = METHOD_STORED;
+			entry.externalAttributes = DIR_ATTRIBUTES;
+			writeLocalHeader(entry, entry.extra, out);
+			return entry;
+		}
+
+		final CRC32 crc = new CRC32();
+		final ByteArrayOutputStream data = new ByteArrayOutputStream((int) Math.min(file.length(), buffer.length));
+		final Deflater deflater = compress ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+		try {
+			final OutputStream content = compress ? new DeflaterOutputStream(data, deflater) : data;
+			final InputStream fileIn = new FileInputStream(file);
+			try {
+				int read;
+				while ((read = fileIn.read(buffer)) >= 0) {
+					crc.update(buffer, 0, read);
+					content.write(buffer, 0, read);
+					entry.size += read;
+				}
+			} finally {
+				fileIn.close();
+			}
+			if (compress) {
+				((DeflaterOutputStream) content).finish();
+			}
+		} finally {
+			if (deflater != null) {
+				deflater.end();
+			}
+		}
+		entry.method = compress ? METHOD_DEFLATED : METHOD_STORED;
+		entry.crc = crc.getValue();
+		entry.compressedSize = data.size();
+		entry.externalAttributes = FILE_ATTRIBUTES;
+		writeLocalHeader(entry, entry.extra, out);
+		data.writeTo(out);
+		return entry;
+	}
+
+	private void writeLocalHeader(CentralEntry entry, byte[] extra, ZipOutput out) throws IOException {
+		out.writeInt(LOCAL_HEADER_SIG);
+		out.writeShort(entry.versionNeeded);
+		out.writeShort(entry.flags);
+		out.writeShort(entry.method);
+		out.writeInt(entry.time);
+		out.writeInt((int) entry.crc);
+		out.writeInt((int) entry.compressedSize);
+		out.writeInt((int) entry.size);
+		out.writeShort(entry.nameBytes.length);
+		out.writeShort(extra.length);
+		out.write(entry.nameBytes, 0, entry.nameBytes.length);
+		out.write(extra, 0, extra.length);
+	}
+
+	private void writeCentralDirectory(List<CentralEntry> entries, ZipOutput out) throws IOException {
+		if (entries.size() >= 0xffff) {
+			throw new ZipException("Zip64 archives are not supported");
+		}
+		final long offset = out.written;
+		for (Iterator<CentralEntry> it = entries.iterator(); it.hasNext();) {
+			CentralEntry entry = it.next();
+			out.writeInt(CENTRAL_HEADER_SIG);
+			out.writeShort(entry.versionMadeBy);
+			out.writeShort(entry.versionNeeded);
+			out.writeShort(entry.flags);
+			out.writeShort(entry.method);
+			out.writeInt(entry.time);
+			out.writeInt((int) entry.crc);
+			out.writeInt((int) entry.compressedSize);
+			out.writeInt((int) entry.size);
+			out.writeShort(entry.nameBytes.length);
+			out.writeShort(entry.extra.length);
+			out.writeShort(entry.comment.length);
+			out.writeShort(0);
+			out.writeShort(entry.internalAttributes);
+			out.writeInt(entry.externalAttributes);
+			out.writeInt((int) entry.offset);
+			out.write(entry.nameBytes, 0, entry.nameBytes.length);
+			out.write(entry.extra, 0, entry.extra.length);
+			out.write(entry.comment, 0, entry.comment.length);
+		}
+		final long size = out.written - offset;
+		if (out.written >= 0xffffffffL) {
+			throw new ZipException("Zip64 archives are not supported");
+		}
+		out.writeInt(END_SIG);
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(entries.size());
+		out.writeShort(entries.size());
+		out.writeInt((int) size);
+		out.writeInt((int) offset);
+		out.writeShort(0);
+	}
+
+	private static int toDosTime(long time) {
+		final Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		final int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+				| calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	private static int readShort(RandomAccessFile in) throws IOException {
+		return in.readUnsignedByte() | in.readUnsignedByte() << 8;
+	}
+
+	private static int readInt(RandomAccessFile in) throws IOException {
+		return readShort(in) | readShort(in) << 16;
+	}
+
+	/**
+	 * An entry of the central directory.
+	 */
+	private static final class CentralEntry {
+
+		String name;
+
+		byte[] nameBytes;
+
+		byte[] extra;
+
+		byte[] comment;
+
+		int versionMadeBy;
+
+		int versionNeeded;
+
+		int flags;
+
+		int method;
+
+		int time;
+
+		long crc;
+
+		long compressedSize;
+
+		long size;
+
+		int internalAttributes;
+
+		int externalAttributes;
+
+		long offset;
+	}
+
+	/**
+	 * Little endian output counting the bytes written.
+	 */
+	private static final class ZipOutput extends OutputStream {
+
+		private final OutputStream out;
+
+		long written;
+
+		ZipOutput(OutputStream out) {
+			this.out = out;
+		}
+
+		void writeShort(int value) throws IOException {
+			out.write(value & 0xff);
+			out.write((value >>> 8) & 0xff);
+			written += 2;
+		}
+
+		void writeInt(int value) throws IOException {
+			writeShort(value & 0xffff);
+			writeShort((value >>> 16) & 0xffff);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			written++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			written += len;
+		}
+
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
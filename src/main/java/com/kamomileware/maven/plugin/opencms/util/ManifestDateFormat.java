@@ -0,0 +1,102 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.util.Date;
+
+/**
+ * Thread-safe formatter for the dates of the OpenCms manifest, that is the
+ * <code>EEE, d MMM yyyy HH:mm:ss z</code> pattern in English and GMT, as in
+ * <code>Mon, 5 Oct 2009 10:03:21 GMT</code>.
+ * <p>
+ * The text is written in a single pass from the epoch seconds, with no calendar
+ * nor intermediate tokens. Formatted values are memoized per second in a small
+ * direct mapped cache of immutable entries, so the many files sharing a
+ * timestamp are formatted once and the instance can be shared by any number of
+ * threads without locking.
+ * </p>
+ */
+public final class ManifestDateFormat {
+
+	private static final String[] DAYS = { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+
+	private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+	private static final int CACHE_SIZE = 256;
+
+	private final Entry[] cache = new Entry[CACHE_SIZE];
+
+	/**
+	 * Formats the date.
+	 *
+	 * @param date
+	 *            the date
+	 * @return the formatted date
+	 */
+	public String format(Date date) {
+		return format(date.getTime());
+	}
+
+	/**
+	 * Formats the milliseconds since the epoch, as returned by
+	 * {@link java.io.File#lastModified()}.
+	 *
+	 * @param millis
+	 *            the time in milliseconds
+	 * @return the formatted date
+	 */
+	public String format(long millis) {
+		long seconds = floorDiv(millis, 1000L);
+		int index = (int) (seconds ^ (seconds >>> 32)) & (CACHE_SIZE - 1);
+		// entries are immutable, a racy read sees either a complete entry or another one
+		Entry entry = cache[index];
+		if (entry == null || entry.seconds != seconds) {
+			entry = new Entry(seconds, formatSeconds(seconds));
+			cache[index] = entry;
+		}
+		return entry.text;
+	}
+
+	private static String formatSeconds(long seconds) {
+		long days = floorDiv(seconds, 86400L);
+		int secondOfDay = (int) (seconds - days * 86400L);
+
+		// civil date from days since 1970-01-01 (proleptic gregorian)
+		long z = days + 719468L;
+		long era = floorDiv(z, 146097L);
+		int dayOfEra = (int) (z - era * 146097L);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400L + (month <= 2 ? 1 : 0);
+
+		StringBuilder sb = new StringBuilder(29);
+		sb.append(DAYS[(int) (days - floorDiv(days, 7L) * 7L)]).append(", ");
+		sb.append(day).append(' ');
+		sb.append(MONTHS[month - 1]).append(' ');
+		sb.append(year).append(' ');
+		appendTwoDigits(sb, secondOfDay / 3600).append(':');
+		appendTwoDigits(sb, (secondOfDay / 60) % 60).append(':');
+		appendTwoDigits(sb, secondOfDay % 60).append(" GMT");
+		return sb.toString();
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+		return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+	}
+
+	private static final class Entry {
+		final long seconds;
+		final String text;
+
+		Entry(long seconds, String text) {
+			this.seconds = seconds;
+			this.text = text;
+		}
+	}
+}
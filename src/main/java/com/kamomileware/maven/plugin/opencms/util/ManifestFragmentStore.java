@@ -0,0 +1,299 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append only store of rendered manifest <code>&lt;file&gt;</code> fragments.
+ * <p>
+ * Fragments are appended, already encoded, to a data file and indexed by the
+ * destination of their resource along with the fingerprint of the bean they
+ * were rendered from. A persistent store saves that index, so the next build
+ * only renders the resources whose fingerprint changed and copies the byte
+ * ranges of the others from the data file with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. The data
+ * file is compacted when most of it is no longer referenced.
+ * </p>
+ * <p>
+ * A temporary store, without index, just holds the fragments rendered during
+ * a build and deletes its data file when closed.
+ * </p>
+ */
+public class ManifestFragmentStore {
+
+	private static final int INDEX_MAGIC = 0x4d465331;
+
+	private final File dataFile;
+
+	private final File indexFile;
+
+	private final Charset charset;
+
+	private final long version;
+
+	private final RandomAccessFile data;
+
+	private final FileChannel channel;
+
+	/** fragments of the previous build, by destination */
+	private final Map<String, Fragment> previous;
+
+	/** fragments of this build, by destination */
+	private final Map<String, Fragment> current = new LinkedHashMap<String, Fragment>();
+
+	/**
+	 * Opens a store, reusing the fragments of the previous build when its index
+	 * was saved with the same version.
+	 *
+	 * @param dataFile
+	 *            the data file
+	 * @param indexFile
+	 *            the index file, <code>null</code> for a temporary store
+	 * @param charset
+	 *            the encoding of the fragments
+	 * @param version
+	 *            identifies the templates and settings the fragments depend on
+	 * @throws IOException
+	 *             if the data file can't be opened
+	 */
+	public ManifestFragmentStore(File dataFile, File indexFile, Charset charset, long version) throws IOException {
+		this.dataFile = dataFile;
+		this.indexFile = indexFile;
+		this.charset = charset;
+		this.version = version;
+		this.previous = indexFile != null ? readIndex(indexFile, dataFile, charset, version) : null;
+
+		this.data = new RandomAccessFile(dataFile, "rw");
+		this.channel = data.getChannel();
+		long validLength = 0;
+		if (previous != null) {
+			for (Fragment fragment : previous.values()) {
+				validLength = Math.max(validLength, fragment.offset + fragment.length);
+			}
+		}
+		// drops whatever was appended after the last saved index
+		channel.truncate(validLength);
+		channel.position(validLength);
+	}
+
+	/**
+	 * Returns the fragment stored in a previous build for the destination if it
+	 * was rendered from a bean with the same fingerprint, registering it for
+	 * this build.
+	 *
+	 * @return the fragment or <code>null</code> if it has to be rendered again
+	 */
+	public Fragment reuse(String destination, long fingerprint) {
+		if (previous == null) {
+			return null;
+		}
+		Fragment fragment = previous.get(destination);
+		if (fragment == null || fragment.fingerprint != fingerprint) {
+			return null;
+		}
+		current.put(destination, fragment);
+		return fragment;
+	}
+
+	/**
+	 * Appends a newly rendered fragment.
+	 *
+	 * @return the stored fragment
+	 * @throws IOException
+	 *             if the fragment can't be written
+	 */
+	public Fragment append(String destination, long fingerprint, String text) throws IOException {
+		ByteBuffer buffer = charset.encode(text);
+		long offset = channel.position();
+		int length = buffer.remaining();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		Fragment fragment = new Fragment(fingerprint, offset, length);
+		current.put(destination, fragment);
+		return fragment;
+	}
+
+	/**
+	 * Copies the fragments, in order, to the target channel, transferring
+	 * adjacent ranges at once.
+	 *
+	 * @throws IOException
+	 *             if the fragments can't be copied
+	 */
+	public void transferTo(List<Fragment> fragments, WritableByteChannel target) throws IOException {
+		int i = 0;
+		while (i < fragments.size()) {
+			long start = fragments.get(i).offset;
+			long end = start + fragments.get(i).length;
+			i++;
+			while (i < fragments.size() && fragments.get(i).offset == end) {
+				end += fragments.get(i).length;
+				i++;
+			}
+			long position = start;
+			while (position < end) {
+				position += channel.transferTo(position, end - position, target);
+			}
+		}
+	}
+
+	/**
+	 * Saves the index of the fragments of this build, compacting the data file
+	 * first when less than half of it is still referenced. Only the fragments
+	 * of this build are kept.
+	 *
+	 * @throws IOException
+	 *             if the index or the data file can't be written
+	 */
+	public void save() throws IOException {
+		if (indexFile == null) {
+			return;
+		}
+		long live = 0;
+		for (Fragment fragment : current.values()) {
+			live += fragment.length;
+		}
+		if (channel.size() > 2 * live + 65536) {
+			// the old index is invalid as soon as fragments move
+			indexFile.delete();
+			compact();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeLong(version);
+			out.writeUTF(charset.name());
+			out.writeLong(channel.size());
+			out.writeInt(current.size());
+			for (Map.Entry<String, Fragment> entry : current.entrySet()) {
+				Fragment fragment = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeLong(fragment.fingerprint);
+				out.writeLong(fragment.offset);
+				out.writeInt(fragment.length);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Rewrites the data file with the fragments of this build only, moving
+	 * them in place so the fragments already handed out are updated.
+	 */
+	private void compact() throws IOException {
+		List<Fragment> fragments = new ArrayList<Fragment>(current.values());
+		// fragments are moved to lower offsets only, so in ascending order
+		Collections.sort(fragments, new Comparator<Fragment>() {
+			public int compare(Fragment f1, Fragment f2) {
+				return f1.offset < f2.offset ? -1 : f1.offset == f2.offset ? 0 : 1;
+			}
+		});
+		ByteBuffer buffer = ByteBuffer.allocate(65536);
+		long position = 0;
+		for (Fragment fragment : fragments) {
+			if (fragment.offset != position) {
+				long read = fragment.offset;
+				long write = position;
+				long end = fragment.offset + fragment.length;
+				while (read < end) {
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), end - read));
+					int numRead = channel.read(buffer, read);
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						write += channel.write(buffer, write);
+					}
+					read += numRead;
+				}
+				fragment.offset = position;
+			}
+			position += fragment.length;
+		}
+		channel.truncate(position);
+		channel.position(position);
+	}
+
+	/**
+	 * Closes the data file, deleting it for a temporary store.
+	 */
+	public void close() {
+		try {
+			data.close();
+		} catch (IOException e) {
+			// nothing to recover
+		}
+		if (indexFile == null) {
+			dataFile.delete();
+		}
+	}
+
+	private static Map<String, Fragment> readIndex(File indexFile, File dataFile, Charset charset, long version) {
+		if (!indexFile.isFile() || !dataFile.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				if (in.readInt() != INDEX_MAGIC || in.readLong() != version || !charset.name().equals(in.readUTF())
+						|| in.readLong() > dataFile.length()) {
+					return null;
+				}
+				int size = in.readInt();
+				Map<String, Fragment> fragments = new HashMap<String, Fragment>(size * 4 / 3 + 1);
+				for (int i = 0; i < size; i++) {
+					String destination = in.readUTF();
+					long fingerprint = in.readLong();
+					long offset = in.readLong();
+					int length = in.readInt();
+					fragments.put(destination, new Fragment(fingerprint, offset, length));
+				}
+				return fragments;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// a broken index just means everything is rendered again
+			return null;
+		}
+	}
+
+	/**
+	 * A stored fragment: its byte range in the data file and the fingerprint of
+	 * the bean it was rendered from.
+	 */
+	public static final class Fragment {
+
+		final long fingerprint;
+
+		long offset;
+
+		final int length;
+
+		Fragment(long fingerprint, long offset, int length) {
+			this.fingerprint = fingerprint;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
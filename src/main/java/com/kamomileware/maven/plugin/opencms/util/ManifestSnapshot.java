@@ -0,0 +1,170 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * The identifiers of a previously generated <code>manifest.xml</code>: the
+ * export creation date and the structure and resource UUIDs of every file by
+ * destination.
+ * <p>
+ * The resource UUID is only kept for the files with their own source: a
+ * sibling carries the resource UUID of its target, which must not pass to the
+ * file if it gets content of its own.
+ * </p>
+ * <p>
+ * Reusing them keeps the manifest of an unchanged module byte for byte identical
+ * between builds, instead of differing on every fresh UUID and date.
+ * </p>
+ */
+public class ManifestSnapshot {
+
+	private final Map<String, long[]> uuidsByDestination = new HashMap<String, long[]>();
+
+	private final List<String> sources = new ArrayList<String>();
+
+	private String createdate;
+
+	/**
+	 * Reads the snapshot of the manifest file. A missing or unreadable file gives
+	 * an empty snapshot.
+	 *
+	 * @param manifestFile
+	 *            the previous manifest
+	 * @return the snapshot
+	 * @throws IOException
+	 *             if the file could not be read
+	 */
+	public static ManifestSnapshot read(File manifestFile) throws IOException {
+		ManifestSnapshot snapshot = new ManifestSnapshot();
+		if (!manifestFile.isFile()) {
+			return snapshot;
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(manifestFile));
+		try {
+			XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+			boolean inFile = false;
+			String destination = null;
+			String source = null;
+			String structure = null;
+			String resource = null;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("file".equals(name)) {
+						inFile = true;
+						destination = source = structure = resource = null;
+					} else if (inFile && "source".equals(name)) {
+						source = reader.getElementText().trim();
+						snapshot.sources.add(source);
+					} else if (inFile && "destination".equals(name)) {
+						destination = reader.getElementText().trim();
+					} else if (inFile && "uuidstructure".equals(name)) {
+						structure = reader.getElementText().trim();
+					} else if (inFile && "uuidresource".equals(name)) {
+						resource = reader.getElementText().trim();
+					} else if (!inFile && snapshot.createdate == null && "createdate".equals(name)) {
+						snapshot.createdate = reader.getElementText().trim();
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT && "file".equals(reader.getLocalName())) {
+					inFile = false;
+					if (destination != null) {
+						// siblings have no source, and the resource UUID of their target
+						snapshot.put(destination, structure, source != null && source.length() > 0 ? resource : null);
+					}
+				}
+			}
+			reader.close();
+		} catch (XMLStreamException e) {
+			// not a manifest we can reuse anything from
+			return new ManifestSnapshot();
+		} catch (NumberFormatException e) {
+			return new ManifestSnapshot();
+		} finally {
+			IOUtil.close(in);
+		}
+		return snapshot;
+	}
+
+	private void put(String destination, String structure, String resource) {
+		long[] uuids = new long[4];
+		if (structure != null && structure.length() > 0) {
+			CmsUUID uuid = CmsUUID.valueOf(structure);
+			uuids[0] = uuid.getMostSignificantBits();
+			uuids[1] = uuid.getLeastSignificantBits();
+		}
+		if (resource != null && resource.length() > 0) {
+			CmsUUID uuid = CmsUUID.valueOf(resource);
+			uuids[2] = uuid.getMostSignificantBits();
+			uuids[3] = uuid.getLeastSignificantBits();
+		}
+		uuidsByDestination.put(destination, uuids);
+	}
+
+	/**
+	 * Returns the export creation date of the manifest, <code>null</code> if
+	 * unknown.
+	 *
+	 * @return the creation date
+	 */
+	public String getCreatedate() {
+		return createdate;
+	}
+
+	/**
+	 * Returns the structure UUID the destination had, <code>null</code> if none.
+	 *
+	 * @param destination
+	 *            the resource destination
+	 * @return the structure UUID or <code>null</code>
+	 */
+	public CmsUUID getUuidstructure(String destination) {
+		long[] uuids = uuidsByDestination.get(destination);
+		return uuids == null || (uuids[0] == 0L && uuids[1] == 0L) ? null : new CmsUUID(uuids[0], uuids[1]);
+	}
+
+	/**
+	 * Returns the resource UUID the destination had, <code>null</code> if none.
+	 *
+	 * @param destination
+	 *            the resource destination
+	 * @return the resource UUID or <code>null</code>
+	 */
+	public CmsUUID getUuidresource(String destination) {
+		long[] uuids = uuidsByDestination.get(destination);
+		return uuids == null || (uuids[2] == 0L && uuids[3] == 0L) ? null : new CmsUUID(uuids[2], uuids[3]);
+	}
+
+	/**
+	 * Returns the sources of the files, in the order the manifest lists them.
+	 *
+	 * @return the sources, relative to the module root
+	 */
+	public List<String> getSources() {
+		return sources;
+	}
+
+	/**
+	 * Whether the snapshot holds no file at all.
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return uuidsByDestination.isEmpty();
+	}
+}
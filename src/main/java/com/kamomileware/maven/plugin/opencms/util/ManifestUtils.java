@@ -1,6 +1,7 @@
 package com.kamomileware.maven.plugin.opencms.util;
 
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
@@ -18,6 +19,7 @@ import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.Iterator;
+import java.util.Properties;
 import java.util.StringTokenizer;
 
 public class ManifestUtils {
@@ -25,6 +27,37 @@ public class ManifestUtils {
 	static Charset iso88591charset = Charset.forName("ISO-8859-1");
 
 
+	/**
+	 * Loads a properties file decoding it with the charset while parsing, so
+	 * files in a native encoding need no previous native2ascii conversion.
+	 * Unicode escapes are still honoured.
+	 *
+	 * @param file the properties file
+	 * @param charset the encoding of the file, <code>null</code> for the
+	 *            ISO-8859-1 of {@link Properties#load(InputStream)}
+	 * @param props where the properties are loaded
+	 * @throws IOException if the file can't be read
+	 */
+	public static void loadProperties(File file, Charset charset, Properties props) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			props.load(new InputStreamReader(in, charset != null ? charset : iso88591charset));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Resolves an encoding name of the plugin configuration.
+	 *
+	 * @param encoding the name, <code>null</code> or <code>default</code> for
+	 *            the platform encoding
+	 * @return the charset
+	 */
+	public static Charset toCharset(String encoding) {
+		return encoding == null || "default".equals(encoding) ? Charset.defaultCharset() : Charset.forName(encoding);
+	}
+
 	public static String readFileAsString(String filePath)
 	throws java.io.IOException{
 		return readFileAsString(new File( filePath ));
@@ -140,6 +173,66 @@ public class ManifestUtils {
 		}
 	}
 
+	/**
+	 * Compares the bytes of the file with the given text encoded in the
+	 * charset, without loading the whole file.
+	 *
+	 * @param file the file, may not exist
+	 * @param content the expected content
+	 * @param charset the encoding the content is written with
+	 * @return true if the file exists and holds exactly the encoded content
+	 * @throws IOException if an error occurred reading the file
+	 */
+	public static boolean contentEquals(File file, String content, Charset charset) throws IOException {
+		ByteBuffer expected = charset.encode(content);
+		if (!file.isFile() || file.length() != expected.remaining()) {
+			return false;
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			int b;
+			while ((b = in.read()) != -1) {
+				if (!expected.hasRemaining() || (byte) b != expected.get()) {
+					return false;
+				}
+			}
+			return !expected.hasRemaining();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Compares the bytes of two files without loading them.
+	 *
+	 * @param file the file, may not exist
+	 * @param other the other file
+	 * @return true if both files exist and have the same content
+	 * @throws IOException if an error occurred reading the files
+	 */
+	public static boolean contentEquals(File file, File other) throws IOException {
+		if (!file.isFile() || !other.isFile() || file.length() != other.length()) {
+			return false;
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			InputStream otherIn = new BufferedInputStream(new FileInputStream(other));
+			try {
+				int b;
+				while ((b = in.read()) != -1) {
+					if (b != otherIn.read()) {
+						return false;
+					}
+				}
+				return otherIn.read() == -1;
+			} finally {
+				otherIn.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
 	public static String capitalizeFirstLettersTokenizer ( String s ) {
 
 	    final StringTokenizer st = new StringTokenizer( s, " ", true );
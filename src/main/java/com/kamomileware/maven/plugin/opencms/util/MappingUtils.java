@@ -19,15 +19,18 @@ package com.kamomileware.maven.plugin.opencms.util;
  * under the License.
  */
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.maven.artifact.Artifact;
 import org.codehaus.plexus.interpolation.InterpolationException;
 import org.codehaus.plexus.interpolation.ObjectBasedValueSource;
-import org.codehaus.plexus.interpolation.PropertiesBasedValueSource;
-import org.codehaus.plexus.interpolation.RegexBasedInterpolator;
 import org.codehaus.plexus.interpolation.ValueSource;
 
 /**
@@ -47,6 +50,10 @@ import org.codehaus.plexus.interpolation.ValueSource;
  */
 public class MappingUtils {
 
+	private static final Pattern TOKEN_PATTERN = Pattern.compile("\\@\\{(__artifact)?([^}]+)\\}@");
+
+	private static final Map<String, FileNameMapping> MAPPINGS = new ConcurrentHashMap<String, FileNameMapping>();
+
 	/**
 	 * Evaluates the specified expression for the given artifact.
 	 *
@@ -57,24 +64,118 @@ public class MappingUtils {
 	 * @return expression the evaluated expression
 	 */
 	public static String evaluateFileNameMapping(String expression, Artifact artifact) throws InterpolationException {
-		String value = expression;
-
-		// FIXME: This is BAD! Accessors SHOULD NOT change the behavior of the
-		// object.
-		artifact.isSnapshot();
-
-		RegexBasedInterpolator interpolator = new RegexBasedInterpolator("\\@\\{(", ")?([^}]+)\\}@");
-		interpolator.addValueSource(new ObjectBasedValueSource(artifact));
-		interpolator.addValueSource(new ObjectBasedValueSource(artifact.getArtifactHandler()));
+		return getFileNameMapping(expression).evaluate(artifact);
+	}
 
-		Properties classifierMask = new Properties();
-		classifierMask.setProperty("classifier", "");
+	/**
+	 * Returns the compiled form of an expression, parsing it only the first
+	 * time it is requested.
+	 *
+	 * @param expression
+	 *            the expression
+	 * @return the compiled mapping
+	 */
+	public static FileNameMapping getFileNameMapping(String expression) {
+		FileNameMapping mapping = MAPPINGS.get(expression);
+		if (mapping == null) {
+			mapping = new FileNameMapping(expression);
+			MAPPINGS.put(expression, mapping);
+		}
+		return mapping;
+	}
 
-		interpolator.addValueSource(new PropertiesBasedValueSource(classifierMask));
+	/**
+	 * A file name mapping split into its literal parts and tokens. The usual
+	 * artifact fields are read with their accessors, any other token being
+	 * resolved by reflection against the artifact and then its handler, as
+	 * the interpolator of the assembly plugin does. A missing classifier
+	 * stands for an empty one and unresolved tokens are kept as is.
+	 */
+	public static final class FileNameMapping {
+
+		private final String[] literals;
+
+		private final String[] tokens;
+
+		// the text of each token, for the unresolved ones
+		private final String[] rawTokens;
+
+		FileNameMapping(String expression) {
+			List<String> literalList = new ArrayList<String>();
+			List<String> tokenList = new ArrayList<String>();
+			List<String> rawTokenList = new ArrayList<String>();
+			Matcher matcher = TOKEN_PATTERN.matcher(expression);
+			int start = 0;
+			while (matcher.find()) {
+				literalList.add(expression.substring(start, matcher.start()));
+				// @{__artifact.version}@ stands for @{version}@, as for the interpolator
+				String token = matcher.group(2);
+				tokenList.add(token.startsWith(".") ? token.substring(1) : token);
+				rawTokenList.add(matcher.group(0));
+				start = matcher.end();
+			}
+			literalList.add(expression.substring(start));
+			this.literals = literalList.toArray(new String[literalList.size()]);
+			this.tokens = tokenList.toArray(new String[tokenList.size()]);
+			this.rawTokens = rawTokenList.toArray(new String[rawTokenList.size()]);
+		}
 
-		value = interpolator.interpolate(value, "__artifact");
+		/**
+		 * Evaluates the mapping for the given artifact.
+		 *
+		 * @param artifact
+		 *            the artifact to use as value object for tokens
+		 * @return the file name
+		 */
+		public String evaluate(Artifact artifact) throws InterpolationException {
+			// FIXME: This is BAD! Accessors SHOULD NOT change the behavior of
+			// the object.
+			artifact.isSnapshot();
+
+			StringBuilder value = new StringBuilder(literals[0]);
+			for (int i = 0; i < tokens.length; i++) {
+				Object tokenValue = resolve(tokens[i], artifact);
+				if (tokenValue != null) {
+					value.append(tokenValue);
+				} else {
+					value.append(rawTokens[i]);
+				}
+				value.append(literals[i + 1]);
+			}
+			return value.toString();
+		}
 
-		return value;
+		private static Object resolve(String token, Artifact artifact) {
+			Object value = null;
+			if ("artifactId".equals(token)) {
+				value = artifact.getArtifactId();
+			} else if ("groupId".equals(token)) {
+				value = artifact.getGroupId();
+			} else if ("version".equals(token)) {
+				value = artifact.getVersion();
+			} else if ("baseVersion".equals(token)) {
+				value = artifact.getBaseVersion();
+			} else if ("type".equals(token)) {
+				value = artifact.getType();
+			} else if ("scope".equals(token)) {
+				value = artifact.getScope();
+			} else if ("classifier".equals(token)) {
+				value = artifact.getClassifier();
+				if (value == null && artifact.getArtifactHandler() != null) {
+					value = artifact.getArtifactHandler().getClassifier();
+				}
+				return value != null ? value : "";
+			} else if ("extension".equals(token) && artifact.getArtifactHandler() != null) {
+				value = artifact.getArtifactHandler().getExtension();
+			}
+			if (value == null) {
+				value = new ObjectBasedValueSource(artifact).getValue(token);
+			}
+			if (value == null && artifact.getArtifactHandler() != null) {
+				value = new ObjectBasedValueSource(artifact.getArtifactHandler()).getValue(token);
+			}
+			return value;
+		}
 	}
 
 	/**
@@ -19,12 +19,19 @@ package com.kamomileware.maven.plugin.opencms.util;
  * under the License.
  */
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -322,13 +329,105 @@ public class ModuleStructure {
 	 *            the target file name
 	 */
 	public void registerTargetFileName(Artifact artifact, String targetFileName) {
+		boolean found = false;
 		final Iterator<DependencyInfo> it = dependenciesInfo.iterator();
 		while (it.hasNext()) {
 			DependencyInfo dependencyInfo = it.next();
 			if (ModuleUtils.isRelated(artifact, dependencyInfo.getDependency())) {
 				dependencyInfo.setTargetFileName(targetFileName);
+				found = true;
 			}
 		}
+		if (!found) {
+			// a transitive dependency, tracked as well to keep its checksum
+			final DependencyInfo dependencyInfo = new DependencyInfo(createDependency(artifact));
+			dependencyInfo.setTargetFileName(targetFileName);
+			dependenciesInfo.add(dependencyInfo);
+		}
+	}
+
+	/**
+	 * Returns the information registered for the specified artifact.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @return the dependency information or <tt>null</tt> if no target file
+	 *         name was registered for the artifact
+	 */
+	public DependencyInfo getDependencyInfo(Artifact artifact) {
+		final Iterator<DependencyInfo> it = dependenciesInfo.iterator();
+		while (it.hasNext()) {
+			DependencyInfo dependencyInfo = it.next();
+			if (ModuleUtils.isRelated(artifact, dependencyInfo.getDependency())) {
+				return dependencyInfo;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the information of the previous run that matches the specified
+	 * artifact. As for {@link #getCachedTargetFileName(Dependency)}, the
+	 * version is not compared.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @return the dependency information of the last run or <tt>null</tt>
+	 */
+	public DependencyInfo getCachedDependencyInfo(Artifact artifact) {
+		if (cache == null) {
+			return null;
+		}
+		final Iterator<DependencyInfo> it = cache.getDependenciesInfo().iterator();
+		while (it.hasNext()) {
+			DependencyInfo dependencyInfo = it.next();
+			final Dependency dependency = dependencyInfo.getDependency();
+			if (dependency != null && StringUtils.equals(artifact.getGroupId(), dependency.getGroupId())
+					&& StringUtils.equals(artifact.getArtifactId(), dependency.getArtifactId())
+					&& StringUtils.equals(artifact.getType(), dependency.getType())
+					&& StringUtils.equals(artifact.getClassifier(), dependency.getClassifier())) {
+				return dependencyInfo;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Registers the SHA-1 checksum of the file of the specified artifact,
+	 * whose target file name must have been registered.
+	 *
+	 * The checksum of the previous run is reused if the file kept its length
+	 * and modification time. Otherwise the <tt>.sha1</tt> file next to it in
+	 * the local repository is read, unless it's older than the file, and as a
+	 * last resort the checksum is computed.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @return the checksum, in hexadecimal
+	 * @throws IOException
+	 *             if the file of the artifact can't be read
+	 */
+	public String registerChecksum(Artifact artifact) throws IOException {
+		final File file = artifact.getFile();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		String checksum = null;
+		final DependencyInfo previous = getCachedDependencyInfo(artifact);
+		if (previous != null && previous.getChecksum() != null && previous.getFileLength() == length
+				&& previous.getFileLastModified() == lastModified) {
+			checksum = previous.getChecksum();
+		}
+		if (checksum == null) {
+			checksum = readChecksumFile(new File(file.getPath() + ".sha1"), lastModified);
+		}
+		if (checksum == null) {
+			checksum = computeChecksum(file);
+		}
+		final DependencyInfo dependencyInfo = getDependencyInfo(artifact);
+		if (dependencyInfo != null) {
+			dependencyInfo.setChecksum(checksum, length, lastModified);
+		}
+		return checksum;
 	}
 
 	/**
@@ -408,7 +507,7 @@ public class ModuleStructure {
 
 	private List<DependencyInfo> createDependenciesInfoList(List<Dependency> dependencies) {
 		if (dependencies == null) {
-			return Collections.emptyList();
+			return new ArrayList<DependencyInfo>();
 		}
 		final List<DependencyInfo> result = new ArrayList<DependencyInfo>();
 		final Iterator<Dependency> it = dependencies.iterator();
@@ -419,6 +518,53 @@ public class ModuleStructure {
 		return result;
 	}
 
+	private Dependency createDependency(Artifact artifact) {
+		final Dependency dependency = new Dependency();
+		dependency.setGroupId(artifact.getGroupId());
+		dependency.setArtifactId(artifact.getArtifactId());
+		dependency.setVersion(artifact.getVersion());
+		dependency.setType(artifact.getType());
+		dependency.setClassifier(artifact.getClassifier());
+		dependency.setScope(artifact.getScope());
+		dependency.setOptional(artifact.isOptional());
+		return dependency;
+	}
+
+	private String readChecksumFile(File checksumFile, long lastModified) throws IOException {
+		if (!checksumFile.isFile() || checksumFile.lastModified() < lastModified) {
+			return null;
+		}
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checksumFile), "US-ASCII"));
+		try {
+			// either the bare checksum or followed by the file name
+			final String line = reader.readLine();
+			final String checksum = line == null ? "" : line.trim().split("\\s+")[0].toLowerCase(Locale.ENGLISH);
+			return checksum.matches("[0-9a-f]{40}") ? checksum : null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private String computeChecksum(File file) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+		final byte[] buffer = new byte[65536];
+		final InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return ChecksumUtils.toHex(digest.digest());
+	}
+
 	private Object readResolve() {
 		// the full structure should be resolved so let's rebuild it
 		this.allFiles = new PathSet();
@@ -0,0 +1,200 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+/**
+ * Trie of <code>/</code> separated paths, one node per path segment, holding a
+ * value for some of the paths.
+ * <p>
+ * Lookups walk the segments of the queried path in place, hashing and comparing
+ * each segment against the node children without creating substrings, so finding
+ * the nearest registered ancestor of a path does not allocate.
+ * </p>
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class PathTrie<V> {
+
+	private final Node<V> root = new Node<V>(0);
+
+	// number of paths holding a value
+	private int size;
+
+	/**
+	 * Associates the value to the path, replacing any previous one.
+	 *
+	 * @param path
+	 *            the path, without leading slash
+	 * @param value
+	 *            the value
+	 */
+	public void put(String path, V value) {
+		Node<V> node = root;
+		int start = 0;
+		int length = path.length();
+		while (start < length) {
+			int end = path.indexOf('/', start);
+			if (end == -1) {
+				end = length;
+			}
+			if (end > start) {
+				node = node.getOrCreateChild(path, start, end);
+			}
+			start = end + 1;
+		}
+		if (node.value == null && value != null) {
+			size++;
+		} else if (node.value != null && value == null) {
+			size--;
+		}
+		node.value = value;
+	}
+
+	/**
+	 * Returns the node of the nearest proper ancestor of the path holding a value,
+	 * <code>null</code> if no ancestor has one.
+	 *
+	 * @param path
+	 *            the path, without leading slash
+	 * @return the matching node or <code>null</code>
+	 */
+	public Node<V> findNearestAncestor(String path) {
+		Node<V> found = null;
+		Node<V> node = root;
+		int start = 0;
+		int end;
+		// the last segment is the path itself, not an ancestor
+		while ((end = path.indexOf('/', start)) != -1) {
+			if (end > start) {
+				node = node.getChild(path, start, end);
+				if (node == null) {
+					break;
+				}
+				if (node.value != null) {
+					found = node;
+				}
+			}
+			start = end + 1;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns whether the trie holds no value at all.
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * A node of the trie, standing for the path made up of the segments from the
+	 * root down to it.
+	 *
+	 * @param <V>
+	 *            the type of the values
+	 */
+	public static final class Node<V> {
+
+		/** Length of the path of this node within the string it was inserted with. */
+		private final int pathLength;
+
+		private V value;
+
+		// open addressing table of children keyed by segment
+		private String[] keys;
+
+		private Node<V>[] children;
+
+		private int size;
+
+		Node(int pathLength) {
+			this.pathLength = pathLength;
+		}
+
+		/**
+		 * Returns the value associated to the path of this node.
+		 *
+		 * @return the value, may be <code>null</code>
+		 */
+		public V getValue() {
+			return value;
+		}
+
+		/**
+		 * Returns the length of the path of this node, that is the index where the
+		 * rest of a descendant path starts.
+		 *
+		 * @return the path length
+		 */
+		public int getPathLength() {
+			return pathLength;
+		}
+
+		Node<V> getChild(String path, int start, int end) {
+			if (keys == null) {
+				return null;
+			}
+			int segmentLength = end - start;
+			int mask = keys.length - 1;
+			int index = hash(path, start, end) & mask;
+			String key;
+			while ((key = keys[index]) != null) {
+				if (key.length() == segmentLength && key.regionMatches(0, path, start, segmentLength)) {
+					return children[index];
+				}
+				index = (index + 1) & mask;
+			}
+			return null;
+		}
+
+		Node<V> getOrCreateChild(String path, int start, int end) {
+			Node<V> child = getChild(path, start, end);
+			if (child == null) {
+				if (keys == null || (size + 1) * 4 > keys.length * 3) {
+					resize();
+				}
+				child = new Node<V>(end);
+				insert(path.substring(start, end), child);
+			}
+			return child;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void resize() {
+			String[] oldKeys = keys;
+			Node<V>[] oldChildren = children;
+			int capacity = oldKeys == null ? 4 : oldKeys.length * 2;
+			keys = new String[capacity];
+			children = new Node[capacity];
+			size = 0;
+			if (oldKeys != null) {
+				for (int i = 0; i < oldKeys.length; i++) {
+					if (oldKeys[i] != null) {
+						insert(oldKeys[i], oldChildren[i]);
+					}
+				}
+			}
+		}
+
+		private void insert(String key, Node<V> child) {
+			int mask = keys.length - 1;
+			int index = hash(key, 0, key.length()) & mask;
+			while (keys[index] != null) {
+				index = (index + 1) & mask;
+			}
+			keys[index] = key;
+			children[index] = child;
+			size++;
+		}
+
+		/** Same as {@link String#hashCode()} of the substring, spread over the low bits. */
+		private static int hash(String path, int start, int end) {
+			int h = 0;
+			for (int i = start; i < end; i++) {
+				h = 31 * h + path.charAt(i);
+			}
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reader of the VFS properties and access control sidecar files of the module
+ * resources, kept in the <code>__properties</code> directory next to them.
+ * <p>
+ * Two formats are supported, and can be mixed in the same directory:
+ * <ul>
+ * <li>one file per resource, named as the resource (with <code>__</code> prefix
+ * for folders) plus the <code>.properties</code> or <code>.acl</code>
+ * extension, and</li>
+ * <li>one consolidated <code>_directory.properties</code> and
+ * <code>_directory.acl</code> file per directory, whose keys are the sidecar
+ * name of the resource, a slash and the property, i.e.
+ * <code>index.jsp/Title.i=Home</code>.</li>
+ * </ul>
+ * The per resource files take precedence over the consolidated ones. Files
+ * are parsed in the configured encoding, unicode escapes being honoured in any
+ * case, so native encoded sidecars need no native2ascii conversion. Each
+ * <code>__properties</code> directory is listed and its consolidated files
+ * parsed once, so resources without sidecar files cost no file system access.
+ * </p>
+ */
+public class SidecarProperties {
+
+	public static final String PROPERTIES_DIR_NAME = "__properties";
+
+	public static final String PREFIX_DIR = "__";
+
+	public static final String PROPERTIES_EXT = ".properties";
+
+	public static final String ACCESSCONTROL_EXT = ".acl";
+
+	/** Base name of the consolidated sidecar files of a directory. */
+	public static final String DIRECTORY_NAME = "_directory";
+
+	private final Map<File, SidecarDirectory> directories = new HashMap<File, SidecarDirectory>();
+
+	private final Charset charset;
+
+	/**
+	 * Reader of ISO-8859-1 sidecar files.
+	 */
+	public SidecarProperties() {
+		this(null);
+	}
+
+	/**
+	 * @param charset
+	 *            the encoding of the sidecar files, <code>null</code> for
+	 *            ISO-8859-1
+	 */
+	public SidecarProperties(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Returns the VFS properties of the resource.
+	 *
+	 * @param resource
+	 *            the file or folder
+	 * @return the properties, empty if none is defined
+	 * @throws IOException
+	 *             if a sidecar file can't be read
+	 */
+	public Properties readProperties(File resource) throws IOException {
+		return read(resource, PROPERTIES_EXT);
+	}
+
+	/**
+	 * Returns the access control entries of the resource.
+	 *
+	 * @param resource
+	 *            the file or folder
+	 * @return the access control entries, empty if none is defined
+	 * @throws IOException
+	 *             if a sidecar file can't be read
+	 */
+	public Properties readAcl(File resource) throws IOException {
+		return read(resource, ACCESSCONTROL_EXT);
+	}
+
+	/**
+	 * Returns the name identifying the sidecar files of a resource.
+	 */
+	public static String getSidecarName(File resource) {
+		return resource.isDirectory() ? PREFIX_DIR.concat(resource.getName()) : resource.getName();
+	}
+
+	private Properties read(File resource, String extension) throws IOException {
+		File sidecarDir = new File(resource.getParentFile(), PROPERTIES_DIR_NAME);
+		SidecarDirectory directory = directories.get(sidecarDir);
+		if (directory == null) {
+			directory = new SidecarDirectory(sidecarDir);
+			directories.put(sidecarDir, directory);
+		}
+
+		String name = getSidecarName(resource);
+		Properties props = new Properties();
+		Map<String, Properties> consolidated = directory.getConsolidated(extension);
+		Properties consolidatedProps = consolidated.get(name);
+		if (consolidatedProps != null) {
+			props.putAll(consolidatedProps);
+		}
+		String fileName = name.concat(extension);
+		if (directory.fileNames.contains(fileName)) {
+			ManifestUtils.loadProperties(new File(sidecarDir, fileName), charset, props);
+		}
+		return props;
+	}
+
+	/**
+	 * Splits the keys of a consolidated sidecar file by resource.
+	 *
+	 * @param file
+	 *            the consolidated file
+	 * @param charset
+	 *            the encoding of the file, <code>null</code> for ISO-8859-1
+	 * @return the properties by sidecar name of the resource
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static Map<String, Properties> readConsolidated(File file, Charset charset) throws IOException {
+		Properties all = new Properties();
+		ManifestUtils.loadProperties(file, charset, all);
+		Map<String, Properties> byName = new HashMap<String, Properties>();
+		for (Entry<Object, Object> entry : all.entrySet()) {
+			String key = (String) entry.getKey();
+			int pos = key.indexOf('/');
+			if (pos <= 0) {
+				continue;
+			}
+			String name = key.substring(0, pos);
+			Properties props = byName.get(name);
+			if (props == null) {
+				props = new Properties();
+				byName.put(name, props);
+			}
+			props.put(key.substring(pos + 1), entry.getValue());
+		}
+		return byName;
+	}
+
+	/**
+	 * Writes a consolidated sidecar file, sorted by resource and property, in
+	 * the <code>ISO-8859-1</code> encoding and escapes of properties files.
+	 *
+	 * @param file
+	 *            the consolidated file
+	 * @param byName
+	 *            the properties by sidecar name of the resource
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public static void writeConsolidated(File file, Map<String, Properties> byName) throws IOException {
+		Map<String, String> sorted = new TreeMap<String, String>();
+		for (Entry<String, Properties> resource : byName.entrySet()) {
+			for (Entry<Object, Object> entry : resource.getValue().entrySet()) {
+				sorted.put(resource.getKey() + '/' + entry.getKey(), (String) entry.getValue());
+			}
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+		try {
+			for (Entry<String, String> entry : sorted.entrySet()) {
+				writeEscaped(writer, entry.getKey(), true);
+				writer.write('=');
+				writeEscaped(writer, entry.getValue(), false);
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void writeEscaped(Writer writer, String s, boolean isKey) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\f':
+				writer.write("\\f");
+				break;
+			case ' ':
+				writer.write(isKey || i == 0 ? "\\ " : " ");
+				break;
+			case '=':
+			case ':':
+			case '#':
+			case '!':
+				writer.write('\\');
+				writer.write(c);
+				break;
+			default:
+				if (c < 0x20 || c > 0x7e) {
+					writer.write(String.format("\\u%04X", (int) c));
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The content of a <code>__properties</code> directory: the names of its
+	 * files and the consolidated entries.
+	 */
+	private class SidecarDirectory {
+
+		private final File directory;
+
+		private final Set<String> fileNames;
+
+		private Map<String, Properties> consolidatedProperties;
+
+		private Map<String, Properties> consolidatedAcl;
+
+		SidecarDirectory(File directory) {
+			this.directory = directory;
+			String[] names = directory.list();
+			this.fileNames = names != null ? new HashSet<String>(Arrays.asList(names)) : Collections.<String> emptySet();
+		}
+
+		Map<String, Properties> getConsolidated(String extension) throws IOException {
+			boolean acl = ACCESSCONTROL_EXT.equals(extension);
+			Map<String, Properties> consolidated = acl ? consolidatedAcl : consolidatedProperties;
+			if (consolidated == null) {
+				String fileName = DIRECTORY_NAME.concat(extension);
+				consolidated = fileNames.contains(fileName) ? readConsolidated(new File(directory, fileName), charset)
+						: new HashMap<String, Properties>();
+				if (acl) {
+					consolidatedAcl = consolidated;
+				} else {
+					consolidatedProperties = consolidated;
+				}
+			}
+			return consolidated;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects the encoding of the text files of the module, so pure ASCII files
+ * can be copied as is and the rest decoded with the encoding they really use.
+ * <p>
+ * A file is scanned once: its byte order mark is checked, then its bytes are
+ * tested eight at a time against the high bit until a non ASCII byte shows up,
+ * from which on they are validated as UTF-8. The results are cached by path,
+ * length and modification time, and saved in the work directory between
+ * builds. A detector may be used from several threads.
+ * </p>
+ * <p>
+ * Without a byte order mark, the bytes of a text in an encoding that is not
+ * ASCII compatible, as UTF-16, may look like ASCII or UTF-8, so these verdicts
+ * only hold for files configured with an ASCII compatible encoding.
+ * </p>
+ */
+public class TextEncodingDetector {
+
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private static final Map<Charset, Boolean> ASCII_COMPATIBLE = new ConcurrentHashMap<Charset, Boolean>();
+
+	/**
+	 * The encoding of a text file.
+	 */
+	public enum TextEncoding {
+		/** Only ASCII bytes, the same in any usual encoding. */
+		ASCII(null, 0),
+		/** Valid UTF-8 with non ASCII chars. */
+		UTF_8("UTF-8", 0),
+		/** UTF-8 byte order mark. */
+		UTF_8_BOM("UTF-8", 3),
+		/** UTF-16 big endian byte order mark. */
+		UTF_16BE_BOM("UTF-16BE", 2),
+		/** UTF-16 little endian byte order mark. */
+		UTF_16LE_BOM("UTF-16LE", 2),
+		/** Not ASCII nor UTF-8, the configured encoding applies. */
+		UNKNOWN(null, 0);
+
+		private final String charsetName;
+
+		private final int bomLength;
+
+		private TextEncoding(String charsetName, int bomLength) {
+			this.charsetName = charsetName;
+			this.bomLength = bomLength;
+		}
+
+		/**
+		 * Returns the charset to decode the file with.
+		 *
+		 * @param configured
+		 *            the encoding configured for the file
+		 * @return the detected charset, or the configured one when none was
+		 */
+		public Charset getCharset(Charset configured) {
+			return charsetName != null ? Charset.forName(charsetName) : configured;
+		}
+
+		/**
+		 * Returns the length of the byte order mark to skip before decoding.
+		 */
+		public int getBomLength() {
+			return bomLength;
+		}
+	}
+
+	private final File cacheFile;
+
+	private final Map<String, Detection> detections = new ConcurrentHashMap<String, Detection>();
+
+	private volatile boolean changed;
+
+	/**
+	 * Creates a detector, loading the results of the previous build.
+	 *
+	 * @param cacheFile
+	 *            the file where the results are kept, <code>null</code> for
+	 *            no persistence
+	 */
+	public TextEncodingDetector(File cacheFile) {
+		this.cacheFile = cacheFile;
+		if (cacheFile != null && cacheFile.isFile()) {
+			try {
+				load();
+			} catch (IOException e) {
+				// a broken cache just means the files are scanned again
+				detections.clear();
+			} catch (IllegalArgumentException e) {
+				detections.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the encoding of a file, scanning it unless it didn't change
+	 * since it was last detected.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the encoding
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public TextEncoding detect(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		Detection detection = detections.get(path);
+		if (detection == null || detection.length != length || detection.lastModified != lastModified) {
+			detection = new Detection(length, lastModified, scan(file));
+			detections.put(path, detection);
+			changed = true;
+		}
+		return detection.encoding;
+	}
+
+	/**
+	 * Returns the encoding of a file configured with an encoding, which
+	 * applies to the files without byte order mark unless it is ASCII
+	 * compatible.
+	 *
+	 * @param file
+	 *            the file
+	 * @param configured
+	 *            the encoding configured for the file
+	 * @return the encoding, {@link TextEncoding#UNKNOWN} for an ASCII or UTF-8
+	 *         verdict when the configured encoding is not ASCII compatible
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public TextEncoding detect(File file, Charset configured) throws IOException {
+		TextEncoding encoding = detect(file);
+		if ((encoding == TextEncoding.ASCII || encoding == TextEncoding.UTF_8) && !isAsciiCompatible(configured)) {
+			return TextEncoding.UNKNOWN;
+		}
+		return encoding;
+	}
+
+	/**
+	 * Whether a charset encodes the ASCII chars as the ASCII bytes.
+	 *
+	 * @param charset
+	 *            the charset
+	 * @return <code>true</code> if ASCII text has the same bytes in the
+	 *         charset
+	 */
+	public static boolean isAsciiCompatible(Charset charset) {
+		Boolean compatible = ASCII_COMPATIBLE.get(charset);
+		if (compatible == null) {
+			compatible = Boolean.FALSE;
+			if (charset.canEncode()) {
+				char[] ascii = new char[0x80];
+				for (int i = 0; i < ascii.length; i++) {
+					ascii[i] = (char) i;
+				}
+				ByteBuffer bytes = charset.encode(CharBuffer.wrap(ascii));
+				compatible = Boolean.valueOf(bytes.remaining() == ascii.length);
+				for (int i = 0; compatible.booleanValue() && i < ascii.length; i++) {
+					compatible = Boolean.valueOf(bytes.get(i) == i);
+				}
+			}
+			ASCII_COMPATIBLE.put(charset, compatible);
+		}
+		return compatible.booleanValue();
+	}
+
+	/**
+	 * Saves the results, if any changed.
+	 *
+	 * @throws IOException
+	 *             if the cache file can't be written
+	 */
+	public void save() throws IOException {
+		if (cacheFile == null || !changed) {
+			return;
+		}
+		cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(cacheFile), "UTF-8"));
+		try {
+			for (Entry<String, Detection> entry : detections.entrySet()) {
+				Detection detection = entry.getValue();
+				writer.write(detection.encoding.name());
+				writer.write('\t');
+				writer.write(Long.toString(detection.length));
+				writer.write('\t');
+				writer.write(Long.toString(detection.lastModified));
+				writer.write('\t');
+				writer.write(entry.getKey());
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		changed = false;
+	}
+
+	private void load() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", 4);
+				if (fields.length == 4) {
+					detections.put(fields[3], new Detection(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+							TextEncoding.valueOf(fields[0])));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Scans a file, without caching.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the encoding
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static TextEncoding scan(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// fill the first buffer
+			}
+			buffer.flip();
+
+			TextEncoding bom = getBom(buffer);
+			if (bom != null) {
+				return bom;
+			}
+
+			// pending continuation bytes of a UTF-8 sequence, -1 while ASCII
+			int pending = -1;
+			while (true) {
+				int position = buffer.position();
+				int limit = buffer.limit();
+				if (pending < 0) {
+					while (position + 8 <= limit && (buffer.getLong(position) & HIGH_BITS) == 0) {
+						position += 8;
+					}
+					while (position < limit && buffer.get(position) >= 0) {
+						position++;
+					}
+					if (position < limit) {
+						pending = 0;
+					}
+				}
+				if (pending >= 0) {
+					pending = validateUtf8(buffer, position, limit, pending);
+					if (pending < 0) {
+						return TextEncoding.UNKNOWN;
+					}
+				}
+				buffer.clear();
+				if (channel.read(buffer) < 0) {
+					break;
+				}
+				buffer.flip();
+			}
+
+			if (pending < 0) {
+				return TextEncoding.ASCII;
+			}
+			return pending == 0 ? TextEncoding.UTF_8 : TextEncoding.UNKNOWN;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static TextEncoding getBom(ByteBuffer buffer) {
+		int b0 = buffer.remaining() > 0 ? buffer.get(0) & 0xff : -1;
+		int b1 = buffer.remaining() > 1 ? buffer.get(1) & 0xff : -1;
+		int b2 = buffer.remaining() > 2 ? buffer.get(2) & 0xff : -1;
+		if (b0 == 0xef && b1 == 0xbb && b2 == 0xbf) {
+			return TextEncoding.UTF_8_BOM;
+		} else if (b0 == 0xfe && b1 == 0xff) {
+			return TextEncoding.UTF_16BE_BOM;
+		} else if (b0 == 0xff && b1 == 0xfe) {
+			return TextEncoding.UTF_16LE_BOM;
+		}
+		return null;
+	}
+
+	/**
+	 * Validates a range of bytes as UTF-8.
+	 *
+	 * @return the continuation bytes still expected at the end of the range,
+	 *         or -1 if the bytes are not valid UTF-8
+	 */
+	private static int validateUtf8(ByteBuffer buffer, int position, int limit, int pending) {
+		for (int i = position; i < limit; i++) {
+			int b = buffer.get(i) & 0xff;
+			if (pending > 0) {
+				if ((b & 0xc0) != 0x80) {
+					return -1;
+				}
+				pending--;
+			} else if (b < 0x80) {
+				continue;
+			} else if (b >= 0xc2 && b <= 0xdf) {
+				pending = 1;
+			} else if (b >= 0xe0 && b <= 0xef) {
+				pending = 2;
+			} else if (b >= 0xf0 && b <= 0xf4) {
+				pending = 3;
+			} else {
+				return -1;
+			}
+		}
+		return pending;
+	}
+
+	private static final class Detection {
+
+		final long length;
+
+		final long lastModified;
+
+		final TextEncoding encoding;
+
+		Detection(long length, long lastModified, TextEncoding encoding) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.encoding = encoding;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.kamomileware.maven.plugin.opencms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import com.kamomileware.maven.plugin.opencms.ManifestBean.CategoryBean;
+import com.kamomileware.maven.plugin.opencms.ManifestBean.ResourceFileBean;
+import com.kamomileware.maven.plugin.opencms.util.CmsUUID;
+
+public class ManifestBeanTest extends TestCase {
+
+	private static final CmsUUID STRUCTURE = new CmsUUID("11111111-1111-1111-1111-111111111111");
+
+	private static final CmsUUID RESOURCE = new CmsUUID("22222222-2222-2222-2222-222222222222");
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testFingerprintOfEqualBeans() throws Exception {
+		ResourceFileBean bean = createBean("/categories/a/", "/categories/b/");
+		ResourceFileBean same = createBean("/categories/b/", "/categories/a/");
+
+		assertEquals(bean.fingerprint(), same.fingerprint());
+		assertEquals(Arrays.asList("/categories/a/", "/categories/b/"), getPaths(same.getRelations()));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testFingerprintChangesWithContent() throws Exception {
+		long fingerprint = createBean("/categories/a/").fingerprint();
+
+		ResourceFileBean changed = createBean("/categories/a/");
+		changed.setDatelastmodified("Tue, 20 Oct 2026 08:00:00 GMT");
+		assertFalse(fingerprint == changed.fingerprint());
+
+		assertFalse(fingerprint == createBean("/categories/b/").fingerprint());
+		assertFalse(fingerprint == createBean().fingerprint());
+
+		changed = createBean("/categories/a/");
+		changed.setSource(null);
+		assertFalse(fingerprint == changed.fingerprint());
+	}
+
+	private static ResourceFileBean createBean(String... categories) {
+		ResourceFileBean bean = new ResourceFileBean();
+		bean.setSource("system/modules/m/index.jsp");
+		bean.setDestination("system/modules/m/index.jsp");
+		bean.setType("jsp");
+		bean.setUuidstructure(STRUCTURE);
+		bean.setUuidresource(RESOURCE);
+		bean.setDatecreated("Mon, 19 Oct 2026 08:00:00 GMT");
+		bean.setDatelastmodified("Mon, 19 Oct 2026 08:00:00 GMT");
+		bean.setUsercreated("Admin");
+		bean.setUserlastmodified("Admin");
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("Title", "Home");
+		bean.setProperties(properties.entrySet());
+		Set<CategoryBean> relations = new TreeSet<CategoryBean>();
+		for (String path : categories) {
+			CategoryBean category = new CategoryBean();
+			category.setPath(path);
+			category.setId(STRUCTURE);
+			relations.add(category);
+		}
+		bean.setRelations(relations);
+		return bean;
+	}
+
+	private static List<String> getPaths(Set<CategoryBean> relations) {
+		List<String> paths = new ArrayList<String>();
+		for (CategoryBean category : relations) {
+			paths.add(category.getPath());
+		}
+		return paths;
+	}
+}
@@ -0,0 +1,84 @@
+package com.kamomileware.maven.plugin.opencms;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.kamomileware.maven.plugin.opencms.util.SidecarProperties;
+
+public class MigratePropertiesMojoTest extends TestCase {
+
+	private File sourceDirectory;
+
+	private File sidecarDir;
+
+	private MigratePropertiesMojo mojo;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		sourceDirectory = File.createTempFile("module", "");
+		sourceDirectory.delete();
+		sidecarDir = new File(sourceDirectory, "system/modules/m/" + SidecarProperties.PROPERTIES_DIR_NAME);
+		sidecarDir.mkdirs();
+		FileUtils.fileWrite(new File(sidecarDir, "index.jsp.properties").getPath(), "UTF-8", "Title.i=Espa\u00f1a\n");
+		FileUtils.fileWrite(new File(sidecarDir, "_directory.properties").getPath(), "ISO-8859-1",
+				"index.jsp/Title.i=Old\nindex.jsp/Description.i=\\u00c1rbol\n");
+
+		mojo = new MigratePropertiesMojo();
+		mojo.setModuleSourceDirectory(sourceDirectory);
+		mojo.setDescriptorsN2AApply(true);
+		mojo.setDescriptorsEncoding("UTF-8");
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(sourceDirectory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testMigratesInDescriptorsEncoding() throws Exception {
+		mojo.execute();
+
+		Map<String, Properties> byName = SidecarProperties.readConsolidated(new File(sidecarDir, "_directory.properties"), null);
+		assertEquals("Espa\u00f1a", byName.get("index.jsp").getProperty("Title.i"));
+		assertEquals("\u00c1rbol", byName.get("index.jsp").getProperty("Description.i"));
+		// kept by default
+		assertTrue(new File(sidecarDir, "index.jsp.properties").isFile());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testDeletesMigratedSidecarsOnRequest() throws Exception {
+		mojo.keepSidecars = false;
+		mojo.execute();
+
+		assertFalse(new File(sidecarDir, "index.jsp.properties").exists());
+		assertEquals("Espa\u00f1a", new SidecarProperties().readProperties(new File(sidecarDir.getParentFile(), "index.jsp"))
+				.getProperty("Title.i"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testDryRunWritesNothing() throws Exception {
+		mojo.setDryRun(true);
+		mojo.keepSidecars = false;
+		mojo.execute();
+
+		assertTrue(new File(sidecarDir, "index.jsp.properties").isFile());
+		assertEquals("Old", SidecarProperties.readConsolidated(new File(sidecarDir, "_directory.properties"), null)
+				.get("index.jsp").getProperty("Title.i"));
+	}
+}
@@ -0,0 +1,137 @@
+package com.kamomileware.maven.plugin.opencms.native2ascii;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.kamomileware.maven.plugin.opencms.util.TextEncodingDetector;
+
+public class BuiltinNative2AsciiTest extends TestCase {
+
+	private File directory;
+
+	private File src;
+
+	private File dest;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("n2a", "");
+		directory.delete();
+		directory.mkdirs();
+		src = new File(directory, "src.properties");
+		dest = new File(directory, "dest.properties");
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testEscapesNonAsciiChars() throws Exception {
+		FileUtils.fileWrite(src.getPath(), "UTF-8", "title=Espa\u00f1a \u4e2d\u6587\nkey=\\u00e9 plain\n");
+
+		assertTrue(new BuiltinNative2Ascii().convert(createArgs("UTF-8", false), src, dest));
+
+		assertEquals("title=Espa\\u00f1a \\u4e2d\\u6587\nkey=\\u00e9 plain\n", FileUtils.fileRead(dest, "US-ASCII"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testEscapesInConfiguredEncoding() throws Exception {
+		FileUtils.fileWrite(src.getPath(), "ISO-8859-1", "title=Espa\u00f1a\n");
+
+		new BuiltinNative2Ascii().convert(createArgs("ISO-8859-1", false), src, dest);
+
+		assertEquals("title=Espa\\u00f1a\n", FileUtils.fileRead(dest, "US-ASCII"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testReverseDecodesEscapes() throws Exception {
+		FileUtils.fileWrite(src.getPath(), "US-ASCII",
+				"title=Espa\\u00f1a \\u4E2D\nescaped=\\\\u00f1\nbroken=\\u00g1 \\x\nend=\\u00");
+
+		assertTrue(new BuiltinNative2Ascii().convert(createArgs("UTF-8", true), src, dest));
+
+		assertEquals("title=Espa\u00f1a \u4e2d\nescaped=\\\\u00f1\nbroken=\\u00g1 \\x\nend=\\u00",
+				FileUtils.fileRead(dest, "UTF-8"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testRoundTrip() throws Exception {
+		StringBuilder text = new StringBuilder();
+		// longer than the buffers, with escapes across their boundaries
+		for (int i = 0; i < 5000; i++) {
+			text.append("line ").append(i).append(" = \u00e1\u00e9\u00ed\u00f3\u00fa \u20ac\n");
+		}
+		FileUtils.fileWrite(src.getPath(), "UTF-8", text.toString());
+		File back = new File(directory, "back.properties");
+
+		BuiltinNative2Ascii adapter = new BuiltinNative2Ascii();
+		adapter.convert(createArgs("UTF-8", false), src, dest);
+		adapter.convert(createArgs("UTF-8", true), dest, back);
+
+		assertEquals(text.toString(), FileUtils.fileRead(back, "UTF-8"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testChecksumOfSource() throws Exception {
+		BuiltinNative2Ascii adapter = new BuiltinNative2Ascii();
+		Native2Ascii args = createArgs("ISO-8859-1", false);
+		args.setEncodingDetector(new TextEncodingDetector(null));
+		// ASCII copied as is, byte order mark skipped, UTF-8 and empty
+		String[] contents = { "plain=ascii\n", "\ufefftitle=Espa\u00f1a\n", "title=Espa\u00f1a\n", "" };
+		String[] converted = { "plain=ascii\n", "title=Espa\\u00f1a\n", "title=Espa\\u00f1a\n", "" };
+		for (int i = 0; i < contents.length; i++) {
+			FileUtils.fileWrite(src.getPath(), "UTF-8", contents[i]);
+			adapter.convert(args, src, dest);
+			assertEquals(converted[i], FileUtils.fileRead(dest, "US-ASCII"));
+			assertEquals(ConversionCache.checksum(src),
+					ConversionCache.checksum(adapter.getChecksum(), adapter.getLength()));
+		}
+
+		FileUtils.fileWrite(src.getPath(), "US-ASCII", "title=Espa\\u00f1a\n");
+		adapter.convert(createArgs("UTF-8", true), src, dest);
+		assertEquals(ConversionCache.checksum(src), ConversionCache.checksum(adapter.getChecksum(), adapter.getLength()));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testEncodingNotAsciiCompatible() throws Exception {
+		FileUtils.fileWrite(src.getPath(), "UTF-16LE", "title=Home\n");
+		Native2Ascii args = createArgs("UTF-16LE", false);
+		args.setEncodingDetector(new TextEncodingDetector(null));
+
+		new BuiltinNative2Ascii().convert(args, src, dest);
+
+		assertEquals("title=Home\n", FileUtils.fileRead(dest, "US-ASCII"));
+	}
+
+	private static Native2Ascii createArgs(String encoding, boolean reverse) {
+		Native2Ascii args = new Native2Ascii();
+		args.setEncoding(encoding);
+		args.setReverse(reverse);
+		return args;
+	}
+}
@@ -0,0 +1,88 @@
+package com.kamomileware.maven.plugin.opencms.native2ascii;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class ConversionCacheTest extends TestCase {
+
+	private File directory;
+
+	private File cacheFile;
+
+	private File source;
+
+	private File target;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("n2a", "");
+		directory.delete();
+		directory.mkdirs();
+		cacheFile = ConversionCache.getFile(new File(directory, "work"), directory);
+		source = new File(directory, "src.properties");
+		target = new File(directory, "dest.properties");
+		FileUtils.fileWrite(source.getPath(), "ISO-8859-1", "title=Espa\u00f1a\n");
+		FileUtils.fileWrite(target.getPath(), "US-ASCII", "title=Espa\\u00f1a\n");
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testNewerTarget() throws Exception {
+		target.setLastModified(source.lastModified() + 2000);
+		assertTrue(new ConversionCache(cacheFile, "a").isUpToDate("src.properties", source, target));
+
+		source.setLastModified(target.lastModified() + 2000);
+		assertFalse(new ConversionCache(cacheFile, "a").isUpToDate("src.properties", source, target));
+		assertFalse(new ConversionCache(cacheFile, "a").isUpToDate("src.properties", source, new File(directory, "none")));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testTouchedSource() throws Exception {
+		ConversionCache cache = new ConversionCache(cacheFile, "a");
+		cache.put("src.properties", ConversionCache.checksum(source));
+		cache.save();
+
+		source.setLastModified(target.lastModified() + 2000);
+		cache = new ConversionCache(cacheFile, "a");
+		assertTrue(cache.isUpToDate("src.properties", source, target));
+		assertEquals(source.lastModified(), target.lastModified());
+		// kept for the next build
+		cache.save();
+		assertEquals(ConversionCache.checksum(source), new ConversionCache(cacheFile, "a").get("src.properties"));
+
+		FileUtils.fileWrite(source.getPath(), "ISO-8859-1", "title=Espa\u00f1o\n");
+		source.setLastModified(target.lastModified() + 4000);
+		assertFalse(new ConversionCache(cacheFile, "a").isUpToDate("src.properties", source, target));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testOtherSettings() throws Exception {
+		ConversionCache cache = new ConversionCache(cacheFile, "a");
+		cache.put("src.properties", ConversionCache.checksum(source));
+		cache.save();
+		target.setLastModified(source.lastModified() + 2000);
+
+		cache = new ConversionCache(cacheFile, "b");
+		assertNull(cache.get("src.properties"));
+		// the target may have been converted with the other settings
+		assertFalse(cache.isUpToDate("src.properties", source, target));
+	}
+}
@@ -0,0 +1,181 @@
+package com.kamomileware.maven.plugin.opencms.packaging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+import com.kamomileware.maven.plugin.opencms.ModuleResource;
+import com.kamomileware.maven.plugin.opencms.util.ModuleStructure;
+
+public class DuplicateClassesPostPackagingTaskTest extends TestCase {
+
+	private File moduleDirectory;
+
+	private File libDirectory;
+
+	private File workDirectory;
+
+	private final List<String> warnings = new ArrayList<String>();
+
+	private final Map<String, File> archiveFiles = new HashMap<String, File>();
+
+	private final ModuleStructure structure = new ModuleStructure();
+
+	private final Set<String> exclusions = new HashSet<String>();
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		moduleDirectory = File.createTempFile("module", "");
+		moduleDirectory.delete();
+		libDirectory = new File(moduleDirectory, "system/modules/m/lib");
+		libDirectory.mkdirs();
+		workDirectory = new File(moduleDirectory, "work");
+		workDirectory.mkdirs();
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(moduleDirectory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testIdenticalCopiesOnlyWarn() throws Exception {
+		writeLibrary("a.jar", "org/acme/Shared.class", "same", "org/acme/A.class", "a");
+		writeLibrary("b.jar", "org/acme/Shared.class", "same", "META-INF/versions/9/org/acme/A.class", "9");
+
+		new DuplicateClassesPostPackagingTask(true).performPostPackaging(createContext());
+
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0), warnings.get(0).contains("share 1 classes, 0 of them different: [org.acme.Shared]"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testDifferentCopies() throws Exception {
+		writeLibrary("a.jar", "org/acme/Shared.class", "one");
+		File streamed = new File(workDirectory, "b.jar");
+		writeJar(streamed, "org/acme/Shared.class", "two");
+		archiveFiles.put("system/modules/m/lib/b.jar", streamed);
+
+		new DuplicateClassesPostPackagingTask(false).performPostPackaging(createContext());
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0), warnings.get(0).contains("1 of them different"));
+
+		try {
+			new DuplicateClassesPostPackagingTask(true).performPostPackaging(createContext());
+			fail("Different copies should fail the build");
+		} catch (MojoFailureException e) {
+			// expected, read from the index cache this time
+			assertTrue(new File(workDirectory, DuplicateClassesPostPackagingTask.CACHE_FILE_NAME).isFile());
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testUnreadableLibrary() throws Exception {
+		writeLibrary("a.jar", "org/acme/A.class", "a");
+		FileUtils.fileWrite(new File(libDirectory, "broken.jar").getPath(), "US-ASCII", "not a zip");
+		structure.registerFile("test", "system/modules/m/lib/broken.jar");
+
+		new DuplicateClassesPostPackagingTask(false).performPostPackaging(createContext());
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0), warnings.get(0).startsWith("Skipping library [system/modules/m/lib/broken.jar]"));
+
+		try {
+			new DuplicateClassesPostPackagingTask(true).performPostPackaging(createContext());
+			fail("An unreadable library should fail the build in fail mode");
+		} catch (MojoExecutionException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testOnlyRegisteredLibraries() throws Exception {
+		writeLibrary("a.jar", "org/acme/Shared.class", "one");
+		// left by a previous build, not packaged by this one
+		writeJar(new File(libDirectory, "stale.jar"), "org/acme/Shared.class", "two");
+		writeLibrary("excluded.jar", "org/acme/Shared.class", "three");
+		exclusions.add("system/modules/m/lib/excluded.jar");
+
+		new DuplicateClassesPostPackagingTask(true).performPostPackaging(createContext());
+		assertEquals(0, warnings.size());
+	}
+
+	private ModulePackagingContext createContext() {
+		final ModuleResource libResource = new ModuleResource();
+		libResource.setDirectory(libDirectory.getAbsolutePath());
+		libResource.setModuleTargetPath("system/modules/m/lib");
+		final SystemStreamLog log = new SystemStreamLog() {
+			public void warn(CharSequence content) {
+				warnings.add(content.toString());
+			}
+		};
+		return (ModulePackagingContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ModulePackagingContext.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if ("getLibResource".equals(name)) {
+							return libResource;
+						} else if ("getArchiveFiles".equals(name)) {
+							return archiveFiles;
+						} else if ("getArchiveExclusions".equals(name)) {
+							return exclusions;
+						} else if ("getModuleStructure".equals(name)) {
+							return structure;
+						} else if ("getWorkDirectory".equals(name)) {
+							return workDirectory;
+						} else if ("getLog".equals(name)) {
+							return log;
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	private void writeLibrary(String name, String... entries) throws Exception {
+		writeJar(new File(libDirectory, name), entries);
+		structure.registerFile("test", "system/modules/m/lib/" + name);
+	}
+
+	private static void writeJar(File jar, String... entries) throws Exception {
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+		try {
+			for (int i = 0; i < entries.length; i += 2) {
+				out.putNextEntry(new ZipEntry(entries[i]));
+				out.write(entries[i + 1].getBytes("US-ASCII"));
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.kamomileware.maven.plugin.opencms.packaging;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+
+import com.kamomileware.maven.plugin.opencms.ManifestBean;
+import com.kamomileware.maven.plugin.opencms.ManifestBean.PermissionSet;
+import com.kamomileware.maven.plugin.opencms.ManifestBean.ResourceFileBean;
+import com.kamomileware.maven.plugin.opencms.ModuleResource;
+import com.kamomileware.maven.plugin.opencms.util.FiletypeRegistry;
+import com.kamomileware.maven.plugin.opencms.util.SidecarProperties;
+
+public class ManifestGenerationTaskTest extends TestCase {
+
+	private File directory;
+
+	private File moduleDirectory;
+
+	private File workDirectory;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("manifest", "");
+		directory.delete();
+		moduleDirectory = new File(directory, "module");
+		new File(moduleDirectory, SidecarProperties.PROPERTIES_DIR_NAME).mkdirs();
+		workDirectory = new File(directory, "work");
+		new File(workDirectory, "manifest").mkdirs();
+		FileUtils.fileWrite(new File(workDirectory, "manifest/module.properties").getPath(), "ISO-8859-1",
+				"manifest.module.name=org.acme.module\nmanifest.module.version=1.0\n");
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testEqualSidecarsShareReadOnlySets() throws Exception {
+		for (String name : new String[] { "a.txt", "b.txt" }) {
+			write(name, name);
+			write(SidecarProperties.PROPERTIES_DIR_NAME + "/" + name + ".properties", "Title.i=Same\n");
+			write(SidecarProperties.PROPERTIES_DIR_NAME + "/" + name + ".acl", "ROLE.Users=+r+v/0\n");
+		}
+
+		final ManifestBean[] rendered = new ManifestBean[1];
+		new ManifestGenerationTask() {
+			protected String applyTemplate(ModulePackagingContext context, ManifestBean manifestBean) {
+				rendered[0] = manifestBean;
+				return super.applyTemplate(context, manifestBean);
+			}
+		}.performPackaging(createContext(0));
+
+		ResourceFileBean a = getFile(rendered[0], "a.txt");
+		ResourceFileBean b = getFile(rendered[0], "b.txt");
+		assertSame(a.getProperties(), b.getProperties());
+		assertSame(a.getAcl(), b.getAcl());
+
+		Entry<String, String> property = a.getProperties().iterator().next();
+		try {
+			property.setValue("Changed");
+			fail("Shared properties should be read only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			a.getAcl().clear();
+			fail("Shared access entries should be read only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		PermissionSet permissions = a.getAcl().iterator().next().getValue();
+		assertTrue(permissions.isFrozen());
+		try {
+			permissions.setAllowed(0);
+			fail("Shared permission sets should be read only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		// replacing the sets of one resource leaves the other untouched
+		Set<Entry<String, PermissionSet>> noAcl = Collections.<String, PermissionSet> emptyMap().entrySet();
+		a.setAcl(noAcl);
+		assertEquals(1, b.getAcl().size());
+		assertEquals("Same", b.getProperties().iterator().next().getValue());
+		assertEquals(permissions.getAllowed(), b.getAcl().iterator().next().getValue().getAllowed());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testSpilledManifestIsIdentical() throws Exception {
+		write("index.jsp", "<html/>");
+		write("images/logo.gif", "GIF89a");
+		write("docs/readme.txt", "readme");
+		write(SidecarProperties.PROPERTIES_DIR_NAME + "/index.jsp.properties", "Title.i=Home\nexport.s=true\n");
+		write(SidecarProperties.PROPERTIES_DIR_NAME + "/index.jsp.acl", "ROLE.Users=+r+v/0\nROLE.Guests=-w/2\n");
+		File manifestFile = new File(moduleDirectory, "manifest.xml");
+
+		new ManifestGenerationTask().performPackaging(createContext(0));
+		String inMemory = FileUtils.fileRead(manifestFile, "UTF-8");
+		assertTrue(inMemory, inMemory.contains("<destination>images/logo.gif</destination>"));
+		manifestFile.setLastModified(manifestFile.lastModified() - 10000);
+		long lastModified = manifestFile.lastModified();
+
+		// the second run takes the UUIDs and creation date of the first one
+		new ManifestGenerationTask().performPackaging(createContext(1));
+		assertEquals(inMemory, FileUtils.fileRead(manifestFile, "UTF-8"));
+		assertEquals(lastModified, manifestFile.lastModified());
+
+		// rewritten when it differs, with the creation date of this build
+		FileUtils.fileWrite(manifestFile.getPath(), "UTF-8", inMemory + "\n");
+		new ManifestGenerationTask().performPackaging(createContext(2));
+		assertEquals(withoutCreatedate(inMemory), withoutCreatedate(FileUtils.fileRead(manifestFile, "UTF-8")));
+	}
+
+	private ModulePackagingContext createContext(final int spillThreshold) {
+		final ModuleResource sourceResource = new ModuleResource();
+		sourceResource.setDirectory(moduleDirectory.getAbsolutePath());
+		sourceResource.addExclude("manifest.xml");
+		final ModuleResource libResource = new ModuleResource();
+		libResource.setDirectory(new File(directory, "lib").getAbsolutePath());
+		final MavenProject project = new MavenProject();
+		final SystemStreamLog log = new SystemStreamLog();
+		return (ModulePackagingContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ModulePackagingContext.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if ("getModuleSourceResource".equals(name)) {
+							return sourceResource;
+						} else if ("getLibResource".equals(name)) {
+							return libResource;
+						} else if ("getModuleResources".equals(name)) {
+							return null;
+						} else if ("archiveClasses".equals(name)) {
+							return Boolean.TRUE;
+						} else if ("getModuleDirectory".equals(name)) {
+							return moduleDirectory;
+						} else if ("getWorkDirectory".equals(name)) {
+							return workDirectory;
+						} else if ("getArchiveFiles".equals(name)) {
+							return new HashMap<String, File>();
+						} else if ("getFiletypeRegistry".equals(name)) {
+							return FiletypeRegistry.DEFAULT;
+						} else if ("getManifestSpillThreshold".equals(name)) {
+							return Integer.valueOf(spillThreshold);
+						} else if ("isManifestFragments".equals(name) || "isDedupSiblings".equals(name)
+								|| "isDescriptorsN2AApply".equals(name)) {
+							return Boolean.FALSE;
+						} else if ("getManifestEncoding".equals(name) || "getDescriptorsEncoding".equals(name)) {
+							return null;
+						} else if ("getProject".equals(name)) {
+							return project;
+						} else if ("getLog".equals(name)) {
+							return log;
+						}
+						throw new UnsupportedOperationException(name);
+					}
+				});
+	}
+
+	private static ResourceFileBean getFile(ManifestBean manifestBean, String destination) {
+		for (Iterator<ResourceFileBean> it = manifestBean.getFiles().iterator(); it.hasNext();) {
+			ResourceFileBean bean = it.next();
+			if (destination.equals(bean.getDestination())) {
+				return bean;
+			}
+		}
+		throw new AssertionError("No file " + destination);
+	}
+
+	private static String withoutCreatedate(String manifest) {
+		return manifest.replaceFirst("<createdate>[^<]*</createdate>", "<createdate/>");
+	}
+
+	private void write(String path, String content) throws Exception {
+		File file = new File(moduleDirectory, path);
+		file.getParentFile().mkdirs();
+		FileUtils.fileWrite(file.getPath(), "ISO-8859-1", content);
+	}
+}
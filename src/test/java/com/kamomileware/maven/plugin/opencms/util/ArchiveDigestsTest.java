@@ -0,0 +1,83 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class ArchiveDigestsTest extends TestCase {
+
+	private static final String[] ALGORITHMS = { "SHA-1", "SHA-256" };
+
+	// digests of "abc"
+	private static final String SHA1 = "a9993e364706816aba3e25717850c26c9cd0d89d";
+
+	private static final String SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	private File directory;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("digests", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testDigestsWhileWriting() throws Exception {
+		File archive = new File(directory, "module.zip");
+		ArchiveDigests digests = new ArchiveDigests(ALGORITHMS);
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		OutputStream out = digests.tee(written);
+		out.write('a');
+		out.write("xbcx".getBytes("US-ASCII"), 1, 2);
+		out.close();
+
+		assertEquals("abc", written.toString("US-ASCII"));
+		List<File> sidecars = digests.writeSidecars(archive);
+		assertEquals(2, sidecars.size());
+		assertEquals(new File(directory, "module.zip.sha1"), sidecars.get(0));
+		assertEquals(SHA1, FileUtils.fileRead(sidecars.get(0), "US-ASCII"));
+		assertEquals(new File(directory, "module.zip.sha256"), sidecars.get(1));
+		assertEquals(SHA256, FileUtils.fileRead(sidecars.get(1), "US-ASCII"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testDigestsOfFile() throws Exception {
+		File archive = new File(directory, "classes.jar");
+		FileUtils.fileWrite(archive.getPath(), "US-ASCII", "abc");
+		ArchiveDigests digests = new ArchiveDigests(ALGORITHMS);
+		digests.update(archive);
+
+		digests.writeSidecars(archive);
+		assertEquals(SHA1, FileUtils.fileRead(ArchiveDigests.getSidecar(archive, "SHA-1"), "US-ASCII"));
+		assertEquals(SHA256, FileUtils.fileRead(ArchiveDigests.getSidecar(archive, "SHA-256"), "US-ASCII"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testExtensions() throws Exception {
+		assertEquals("sha256", ArchiveDigests.getExtension("SHA-256"));
+		assertEquals("md5", ArchiveDigests.getExtension("MD5"));
+		assertEquals(new File("module.zip.sha512"), ArchiveDigests.getSidecar(new File("module.zip"), "SHA-512"));
+	}
+}
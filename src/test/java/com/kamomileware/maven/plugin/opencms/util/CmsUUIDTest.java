@@ -0,0 +1,121 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+public class CmsUUIDTest extends TestCase {
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testTimeBasedFormat() throws Exception {
+		CmsUUID uuid = new CmsUUID();
+		String value = uuid.getStringValue();
+
+		assertEquals(CmsUUID.STRING_LENGTH, value.length());
+		assertEquals('1', value.charAt(14));
+		assertEquals(uuid, new CmsUUID(value));
+		assertEquals(uuid, new CmsUUID(uuid.toByteArray()));
+		assertFalse(uuid.isNullUUID());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testTimeBasedLayout() throws Exception {
+		CmsUUID previous = new CmsUUID();
+		for (int i = 0; i < 1000; i++) {
+			CmsUUID uuid = new CmsUUID();
+			// version 1 and the IETF variant
+			assertEquals(1, (int) (uuid.getMostSignificantBits() >>> 12) & 0xf);
+			assertEquals(2, (int) (uuid.getLeastSignificantBits() >>> 62) & 0x3);
+			// same clock sequence and node in a thread, with increasing timestamps
+			assertEquals(previous.getLeastSignificantBits(), uuid.getLeastSignificantBits());
+			assertTrue(timestamp(uuid) > timestamp(previous));
+			previous = uuid;
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testFormatAndOrder() throws Exception {
+		CmsUUID uuid = new CmsUUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+		assertEquals(new UUID(0x0123456789abcdefL, 0xfedcba9876543210L).toString(), uuid.toString());
+		assertEquals(uuid, CmsUUID.valueOf(uuid.toString()));
+		assertEquals(uuid.hashCode(), new CmsUUID(uuid.toString()).hashCode());
+
+		// the bits compare unsigned
+		assertTrue(new CmsUUID(-1L, 0L).compareTo(new CmsUUID(1L, 0L)) > 0);
+		assertTrue(new CmsUUID(1L, 1L).compareTo(new CmsUUID(1L, -1L)) < 0);
+		assertEquals(0, uuid.compareTo(uuid.clone()));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testSerialization() throws Exception {
+		CmsUUID uuid = new CmsUUID();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(uuid);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			assertEquals(uuid, in.readObject());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testUniqueAcrossThreads() throws Exception {
+		final int threads = 4;
+		final int perThread = 20000;
+		final Set<CmsUUID> generated = Collections.synchronizedSet(new HashSet<CmsUUID>());
+		final Exception[] failure = new Exception[1];
+
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < perThread; j++) {
+							generated.add(new CmsUUID());
+						}
+					} catch (Exception e) {
+						failure[0] = e;
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (int i = 0; i < threads; i++) {
+			workers[i].join();
+		}
+
+		assertNull(failure[0]);
+		assertEquals(threads * perThread, generated.size());
+	}
+
+	private static long timestamp(CmsUUID uuid) {
+		long bits = uuid.getMostSignificantBits();
+		return (bits & 0xfffL) << 48 | ((bits >>> 16) & 0xffffL) << 32 | (bits >>> 32);
+	}
+}
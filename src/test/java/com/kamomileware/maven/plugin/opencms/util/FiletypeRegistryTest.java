@@ -0,0 +1,95 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.kamomileware.maven.plugin.opencms.ManifestBean.Filetype;
+import com.kamomileware.maven.plugin.opencms.util.FiletypeRegistry.ResourceType;
+
+public class FiletypeRegistryTest extends TestCase {
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testDefaultMappings() throws Exception {
+		FiletypeRegistry registry = FiletypeRegistry.DEFAULT;
+
+		assertEquals(Filetype.image, registry.getTypeByFileName("logo.png").getFiletype());
+		assertEquals(Filetype.image, registry.getTypeByFileName("photo.JPEG").getFiletype());
+		assertEquals(Filetype.jsp, registry.getTypeByFileName("index.jsp").getFiletype());
+		assertEquals(Filetype.binary, registry.getTypeByFileName("Module.class").getFiletype());
+		assertEquals(Filetype.binary, registry.getTypeByFileName("lib-1.0.jar").getFiletype());
+		assertEquals(Filetype.sibling, registry.getTypeByFileName("page.sibling").getFiletype());
+		assertEquals(Filetype.plain, registry.getTypeByFileName("page.html").getFiletype());
+		assertEquals(Filetype.plain, registry.getTypeByFileName("Module.clas").getFiletype());
+		assertEquals("binary", registry.getTypeByFileName("a.pdf").getName());
+		assertSame(FiletypeRegistry.getStandardType(Filetype.plain), registry.getTypeByFileName("a.unknown"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testConfiguredMappings() throws Exception {
+		Map<String, String> extensionTypes = new LinkedHashMap<String, String>();
+		extensionTypes.put("xml", "xmlcontent");
+		extensionTypes.put(" .JSP ", "plain");
+		extensionTypes.put("svg", "image");
+		extensionTypes.put("xsd", "xmlcontent");
+		FiletypeRegistry registry = new FiletypeRegistry(extensionTypes);
+
+		ResourceType xml = registry.getTypeByFileName("content.xml");
+		assertEquals(Filetype.custom, xml.getFiletype());
+		assertEquals("xmlcontent", xml.getName());
+		assertSame(xml, registry.getTypeByFileName("schema.XSD"));
+		assertSame(xml, registry.getTypeByName("xmlcontent"));
+		assertEquals(Filetype.plain, registry.getTypeByFileName("index.jsp").getFiletype());
+		assertSame(FiletypeRegistry.getStandardType(Filetype.image), registry.getTypeByFileName("icon.svg"));
+		// the defaults still apply
+		assertEquals(Filetype.image, registry.getTypeByFileName("logo.png").getFiletype());
+		// not configured, and unknown to the default registry
+		assertEquals(Filetype.plain, FiletypeRegistry.DEFAULT.getTypeByFileName("content.xml").getFiletype());
+		assertEquals("other", registry.getTypeByName("other").getName());
+		assertEquals(Filetype.custom, registry.getTypeByName("other").getFiletype());
+
+		try {
+			new FiletypeRegistry(Collections.singletonMap(".", "binary"));
+			fail("An empty extension is not a valid mapping");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testNamesWithoutExtension() throws Exception {
+		FiletypeRegistry registry = FiletypeRegistry.DEFAULT;
+
+		// the whole name stands for the extension
+		assertEquals(Filetype.binary, registry.getTypeByFileName("jar").getFiletype());
+		assertEquals(Filetype.plain, registry.getTypeByFileName("README").getFiletype());
+		assertEquals(Filetype.binary, registry.getTypeByFileName(".jar").getFiletype());
+		assertEquals(Filetype.plain, registry.getTypeByFileName("").getFiletype());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testTrailingDots() throws Exception {
+		FiletypeRegistry registry = FiletypeRegistry.DEFAULT;
+
+		assertEquals(Filetype.binary, registry.getTypeByFileName("lib.jar.").getFiletype());
+		assertEquals(Filetype.binary, registry.getTypeByFileName("jar.").getFiletype());
+		assertEquals(Filetype.binary, registry.getTypeByFileName("jar..").getFiletype());
+		assertEquals(Filetype.plain, registry.getTypeByFileName("foo.").getFiletype());
+		assertEquals(Filetype.plain, registry.getTypeByFileName(".").getFiletype());
+		assertEquals(Filetype.plain, registry.getTypeByFileName("..").getFiletype());
+	}
+}
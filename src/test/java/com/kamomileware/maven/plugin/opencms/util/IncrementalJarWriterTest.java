@@ -0,0 +1,192 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.archiver.jar.Manifest;
+import org.codehaus.plexus.util.FileUtils;
+
+public class IncrementalJarWriterTest extends TestCase {
+
+	private File directory;
+
+	private File classesDirectory;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("jars", "");
+		directory.delete();
+		classesDirectory = new File(directory, "classes");
+		classesDirectory.mkdirs();
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testUnchangedClasses() throws Exception {
+		write("org/acme/A.class", "a");
+		write("org/acme/B.class", "b");
+		File jar = createJar("previous.jar");
+
+		IncrementalJarWriter writer = new IncrementalJarWriter(classesDirectory);
+		writer.update(jar);
+
+		assertEquals(0, writer.getCompressed());
+		assertEquals(0, writer.getRemoved());
+		assertEquals(readEntries(createJar("full.jar")), readEntries(jar));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testAddedRemovedAndChangedClasses() throws Exception {
+		write("org/acme/A.class", "a");
+		write("org/acme/B.class", "b");
+		write("org/acme/C.class", "c");
+		File jar = createJar("previous.jar");
+
+		write("org/acme/A.class", "changed");
+		new File(classesDirectory, "org/acme/B.class").delete();
+		write("org/acme/sub/D.class", "d");
+
+		IncrementalJarWriter writer = new IncrementalJarWriter(classesDirectory);
+		writer.update(jar);
+
+		assertEquals(1, writer.getRemoved());
+		Map<String, String> entries = readEntries(jar);
+		assertEquals(readEntries(createJar("full.jar")), entries);
+		assertEquals("changed", entries.get("org/acme/A.class"));
+		assertFalse(entries.containsKey("org/acme/B.class"));
+		assertEquals("d", entries.get("org/acme/sub/D.class"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testDefaultExcludes() throws Exception {
+		write("org/acme/A.class", "a");
+		File jar = createJar("previous.jar");
+
+		write("org/acme/A.class~", "backup");
+		write("org/acme/.svn/entries", "svn");
+		write("org/acme/CVS/Root", "cvs");
+
+		new IncrementalJarWriter(classesDirectory).update(jar);
+
+		Map<String, String> entries = readEntries(jar);
+		assertEquals(readEntries(createJar("full.jar")), entries);
+		assertFalse(entries.containsKey("org/acme/A.class~"));
+		assertFalse(entries.containsKey("org/acme/.svn/"));
+		assertFalse(entries.containsKey("org/acme/CVS/Root"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testKeepsManifest() throws Exception {
+		write("org/acme/A.class", "a");
+		File jar = createJar("previous.jar");
+
+		write("org/acme/A.class", "changed");
+		// a manifest of the classes directory is not the one of the archive
+		write("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nBuilt-By: nobody\n");
+		new IncrementalJarWriter(classesDirectory).update(jar);
+
+		JarFile jarFile = new JarFile(jar);
+		try {
+			assertEquals("test", jarFile.getManifest().getMainAttributes().getValue("Built-By"));
+		} finally {
+			jarFile.close();
+		}
+		assertEquals(readEntries(createJar("full.jar")), readEntries(jar));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testStoredWhenNotCompressed() throws Exception {
+		write("org/acme/A.class", "a");
+		File jar = createJar("previous.jar");
+
+		write("org/acme/A.class", "changed");
+		write("org/acme/B.class", "b");
+		new IncrementalJarWriter(classesDirectory, false).update(jar);
+
+		JarFile jarFile = new JarFile(jar);
+		try {
+			assertEquals(ZipEntry.STORED, jarFile.getEntry("org/acme/A.class").getMethod());
+			assertEquals(ZipEntry.STORED, jarFile.getEntry("org/acme/B.class").getMethod());
+		} finally {
+			jarFile.close();
+		}
+		assertEquals(readEntries(createJar("full.jar")), readEntries(jar));
+	}
+
+	private File createJar(String name) throws Exception {
+		File jar = new File(directory, name);
+		JarArchiver archiver = new JarArchiver();
+		Manifest manifest = new Manifest();
+		manifest.addConfiguredAttribute(new Manifest.Attribute("Built-By", "test"));
+		archiver.addConfiguredManifest(manifest);
+		archiver.addDirectory(classesDirectory);
+		archiver.setDestFile(jar);
+		archiver.createArchive();
+		return jar;
+	}
+
+	private void write(String path, String content) throws Exception {
+		File file = new File(classesDirectory, path);
+		file.getParentFile().mkdirs();
+		FileUtils.fileWrite(file.getPath(), "US-ASCII", content);
+	}
+
+	/**
+	 * Returns the content of the entries by name, the directories with no
+	 * content.
+	 */
+	private static Map<String, String> readEntries(File jar) throws Exception {
+		Map<String, String> entries = new TreeMap<String, String>();
+		JarFile jarFile = new JarFile(jar);
+		try {
+			for (Enumeration<? extends ZipEntry> e = jarFile.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				ByteArrayOutputStream content = new ByteArrayOutputStream();
+				InputStream in = jarFile.getInputStream(entry);
+				try {
+					byte[] buffer = new byte[4096];
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						content.write(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+				entries.put(entry.getName(), content.toString("US-ASCII"));
+			}
+		} finally {
+			jarFile.close();
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,106 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class ManifestDateFormatTest extends TestCase {
+
+	private static SimpleDateFormat createReference() {
+		SimpleDateFormat reference = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z", Locale.ENGLISH);
+		reference.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return reference;
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testSameAsSimpleDateFormat() throws Exception {
+		SimpleDateFormat reference = createReference();
+		ManifestDateFormat format = new ManifestDateFormat();
+
+		assertEquals("Mon, 5 Oct 2009 10:03:21 GMT", format.format(reference.parse("Mon, 5 Oct 2009 10:03:21 GMT")));
+		assertEquals("Thu, 1 Jan 1970 00:00:00 GMT", format.format(0L));
+		// leap day, end of year and before the epoch
+		long[] times = { 951782400000L, 1709164800000L, 1704067199999L, -1L, -86400001L, 4102444800000L };
+		for (long time : times) {
+			assertEquals(reference.format(new Date(time)), format.format(time));
+		}
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			long time = (long) (random.nextDouble() * 4102444800000L);
+			assertEquals(reference.format(new Date(time)), format.format(new Date(time)));
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testSingleDigitDays() throws Exception {
+		SimpleDateFormat reference = createReference();
+		ManifestDateFormat format = new ManifestDateFormat();
+		for (int day = 1; day <= 9; day++) {
+			long time = reference.parse("Sat, " + day + " Mar 2014 23:59:59 GMT").getTime();
+			String text = format.format(time);
+			assertEquals(reference.format(new Date(time)), text);
+			assertTrue(text, text.contains(", " + day + " Mar"));
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testCachedWithinSecond() throws Exception {
+		ManifestDateFormat format = new ManifestDateFormat();
+		long second = 1254736999000L;
+
+		String text = format.format(second);
+		assertSame(text, format.format(second + 999));
+		assertEquals(createReference().format(new Date(second + 999)), text);
+		// a different second mapping to the same cache slot replaces the entry
+		String other = format.format(second + 256000);
+		assertEquals(createReference().format(new Date(second + 256000)), other);
+		assertEquals(text, format.format(second + 500));
+		assertFalse(text.equals(format.format(second + 1000)));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testConcurrentCallers() throws Exception {
+		final ManifestDateFormat format = new ManifestDateFormat();
+		final String[] failure = new String[1];
+		Thread[] workers = new Thread[4];
+		for (int i = 0; i < workers.length; i++) {
+			final long seed = i;
+			workers[i] = new Thread() {
+				public void run() {
+					SimpleDateFormat reference = createReference();
+					Random random = new Random(seed);
+					for (int j = 0; j < 20000; j++) {
+						// few distinct seconds, so the threads share the cache slots
+						long time = 1254736999000L + random.nextInt(1024) * 1000L + random.nextInt(1000);
+						String expected = reference.format(new Date(time));
+						String actual = format.format(time);
+						if (!expected.equals(actual)) {
+							failure[0] = expected + " != " + actual;
+						}
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].join();
+		}
+		assertNull(failure[0], failure[0]);
+	}
+}
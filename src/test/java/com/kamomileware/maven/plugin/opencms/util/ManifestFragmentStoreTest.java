@@ -0,0 +1,132 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.kamomileware.maven.plugin.opencms.util.ManifestFragmentStore.Fragment;
+
+public class ManifestFragmentStoreTest extends TestCase {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private File directory;
+
+	private File dataFile;
+
+	private File indexFile;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("fragments", "");
+		directory.delete();
+		directory.mkdirs();
+		dataFile = new File(directory, "fragments.dat");
+		indexFile = new File(directory, "fragments.idx");
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testReusesUnchangedFragments() throws Exception {
+		ManifestFragmentStore store = new ManifestFragmentStore(dataFile, indexFile, UTF_8, 1L);
+		store.append("a", 10L, "<file>a\u00f1</file>\n");
+		store.append("b", 20L, "<file>b</file>\n");
+		store.save();
+		store.close();
+
+		store = new ManifestFragmentStore(dataFile, indexFile, UTF_8, 1L);
+		List<Fragment> fragments = new ArrayList<Fragment>();
+		fragments.add(store.reuse("a", 10L));
+		assertNull(store.reuse("b", 21L));
+		fragments.add(store.append("b", 21L, "<file>b2</file>\n"));
+		assertNull(store.reuse("c", 30L));
+
+		assertEquals("<file>a\u00f1</file>\n<file>b2</file>\n", transfer(store, fragments));
+		store.close();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testVersionChangeDiscardsFragments() throws Exception {
+		ManifestFragmentStore store = new ManifestFragmentStore(dataFile, indexFile, UTF_8, 1L);
+		store.append("a", 10L, "<file>a</file>\n");
+		store.save();
+		store.close();
+
+		store = new ManifestFragmentStore(dataFile, indexFile, UTF_8, 2L);
+		assertNull(store.reuse("a", 10L));
+		store.close();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testCompactsUnreferencedData() throws Exception {
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			large.append("<property/>");
+		}
+		ManifestFragmentStore store = new ManifestFragmentStore(dataFile, indexFile, UTF_8, 1L);
+		store.append("large", 1L, large.toString());
+		store.append("small", 2L, "<file>small</file>\n");
+		store.save();
+		store.close();
+		long before = dataFile.length();
+
+		// only the small fragment is still referenced
+		store = new ManifestFragmentStore(dataFile, indexFile, UTF_8, 1L);
+		Fragment small = store.reuse("small", 2L);
+		store.save();
+		assertTrue(dataFile.length() < before);
+		List<Fragment> fragments = new ArrayList<Fragment>();
+		fragments.add(small);
+		assertEquals("<file>small</file>\n", transfer(store, fragments));
+		store.close();
+
+		store = new ManifestFragmentStore(dataFile, indexFile, UTF_8, 1L);
+		fragments.set(0, store.reuse("small", 2L));
+		assertNull(store.reuse("large", 1L));
+		assertEquals("<file>small</file>\n", transfer(store, fragments));
+		store.close();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testTemporaryStoreDeletesData() throws Exception {
+		ManifestFragmentStore store = new ManifestFragmentStore(dataFile, null, UTF_8, 1L);
+		assertNull(store.reuse("a", 10L));
+		store.append("a", 10L, "<file>a</file>\n");
+		store.save();
+		store.close();
+
+		assertFalse(dataFile.exists());
+		assertFalse(indexFile.exists());
+	}
+
+	private static String transfer(ManifestFragmentStore store, List<Fragment> fragments) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		store.transferTo(fragments, Channels.newChannel(out));
+		return new String(out.toByteArray(), "UTF-8");
+	}
+}
@@ -0,0 +1,95 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class ManifestSnapshotTest extends TestCase {
+
+	private static final String FILE_UUID = "11111111-1111-1111-1111-111111111111";
+
+	private static final String SIBLING_UUID = "22222222-2222-2222-2222-222222222222";
+
+	private static final String FOLDER_UUID = "33333333-3333-3333-3333-333333333333";
+
+	private File manifest;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		manifest = File.createTempFile("manifest", ".xml");
+		FileUtils.fileWrite(manifest.getPath(), "UTF-8", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<export>\n"
+				+ "\t<info><createdate>Mon, 19 Oct 2026 08:00:00 GMT</createdate></info>\n"
+				+ "\t<files>\n"
+				+ "\t\t<file><destination>system/modules/m</destination><type>folder</type>"
+				+ "<uuidstructure>" + FOLDER_UUID + "</uuidstructure></file>\n"
+				+ "\t\t<file><source>system/modules/m/b.txt</source><destination>system/modules/m/b.txt</destination>"
+				+ "<type>plain</type><uuidstructure>" + SIBLING_UUID + "</uuidstructure>"
+				+ "<uuidresource>" + FILE_UUID + "</uuidresource></file>\n"
+				+ "\t\t<file><source>system/modules/m/a.txt</source><destination>system/modules/m/a.txt</destination>"
+				+ "<type>plain</type><uuidstructure>" + FOLDER_UUID.replace('3', '4') + "</uuidstructure>"
+				+ "<uuidresource>" + FILE_UUID.replace('1', '5') + "</uuidresource></file>\n"
+				+ "\t\t<file><destination>system/modules/m/c.txt</destination><type>plain</type>"
+				+ "<uuidstructure>" + SIBLING_UUID.replace('2', '6') + "</uuidstructure>"
+				+ "<uuidresource>" + FILE_UUID + "</uuidresource></file>\n"
+				+ "\t</files>\n"
+				+ "</export>\n");
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		manifest.delete();
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testReadsIdentifiers() throws Exception {
+		ManifestSnapshot snapshot = ManifestSnapshot.read(manifest);
+
+		assertFalse(snapshot.isEmpty());
+		assertEquals("Mon, 19 Oct 2026 08:00:00 GMT", snapshot.getCreatedate());
+		assertEquals(new CmsUUID(FOLDER_UUID), snapshot.getUuidstructure("system/modules/m"));
+		assertNull(snapshot.getUuidresource("system/modules/m"));
+		assertEquals(new CmsUUID(FILE_UUID), snapshot.getUuidresource("system/modules/m/b.txt"));
+		assertNull(snapshot.getUuidstructure("system/modules/m/missing.txt"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testSiblingResourceUuidIsNotKept() throws Exception {
+		ManifestSnapshot snapshot = ManifestSnapshot.read(manifest);
+
+		assertEquals(new CmsUUID(SIBLING_UUID.replace('2', '6')), snapshot.getUuidstructure("system/modules/m/c.txt"));
+		assertNull(snapshot.getUuidresource("system/modules/m/c.txt"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testSourcesInManifestOrder() throws Exception {
+		ManifestSnapshot snapshot = ManifestSnapshot.read(manifest);
+
+		assertEquals(Arrays.asList("system/modules/m/b.txt", "system/modules/m/a.txt"), snapshot.getSources());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testMissingOrBrokenManifest() throws Exception {
+		assertTrue(ManifestSnapshot.read(new File(manifest.getPath() + ".missing")).isEmpty());
+
+		FileUtils.fileWrite(manifest.getPath(), "UTF-8", "<export><files><file>");
+		assertTrue(ManifestSnapshot.read(manifest).isEmpty());
+	}
+}
@@ -0,0 +1,50 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class ManifestUtilsTest extends TestCase {
+
+	private File directory;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("manifest", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testContentEqualsInCharset() throws Exception {
+		String content = "<title>Espa\u00f1a</title>";
+		File file = new File(directory, "manifest.xml");
+		Charset utf8 = Charset.forName("UTF-8");
+		Charset latin1 = Charset.forName("ISO-8859-1");
+
+		assertFalse(ManifestUtils.contentEquals(file, content, utf8));
+
+		FileUtils.fileWrite(file.getPath(), "UTF-8", content);
+		assertTrue(ManifestUtils.contentEquals(file, content, utf8));
+		assertFalse(ManifestUtils.contentEquals(file, content, latin1));
+		assertFalse(ManifestUtils.contentEquals(file, content + " ", utf8));
+		assertFalse(ManifestUtils.contentEquals(file, "<title>Espa\u00f1o</title>", utf8));
+
+		FileUtils.fileWrite(file.getPath(), "ISO-8859-1", content);
+		assertTrue(ManifestUtils.contentEquals(file, content, latin1));
+		assertFalse(ManifestUtils.contentEquals(file, content, utf8));
+	}
+}
@@ -0,0 +1,65 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+public class MappingUtilsTest extends TestCase {
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testArtifactFields() throws Exception {
+		Artifact artifact = createArtifact(null);
+
+		assertEquals("lib-1.0.jar", MappingUtils.evaluateFileNameMapping("@{artifactId}@-@{version}@.@{extension}@", artifact));
+		assertEquals("org.acme:lib:jar:compile",
+				MappingUtils.evaluateFileNameMapping("@{groupId}@:@{artifactId}@:@{type}@:@{scope}@", artifact));
+		assertEquals("lib-.jar", MappingUtils.evaluateFileNameMapping("@{artifactId}@-@{classifier}@.@{extension}@", artifact));
+		assertEquals("lib-sources.jar",
+				MappingUtils.evaluateFileNameMapping("@{artifactId}@-@{classifier}@.@{extension}@", createArtifact("sources")));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testPrefixedTokens() throws Exception {
+		Artifact artifact = createArtifact(null);
+
+		assertEquals("lib-1.0.jar",
+				MappingUtils.evaluateFileNameMapping("@{__artifact.artifactId}@-@{__artifact.version}@.@{extension}@", artifact));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testUnresolvedTokensAreKept() throws Exception {
+		Artifact artifact = createArtifact(null);
+
+		assertEquals("lib-@{nothing}@-@{__artifact.nothing}@-@{__artifact}@.jar", MappingUtils.evaluateFileNameMapping(
+				"@{artifactId}@-@{nothing}@-@{__artifact.nothing}@-@{__artifact}@.@{extension}@", artifact));
+		assertEquals("no tokens", MappingUtils.evaluateFileNameMapping("no tokens", artifact));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testMappingIsCompiledOnce() throws Exception {
+		String expression = "@{artifactId}@.@{extension}@";
+
+		assertSame(MappingUtils.getFileNameMapping(expression), MappingUtils.getFileNameMapping(expression));
+		assertEquals("lib.jar", MappingUtils.getFileNameMapping(expression).evaluate(createArtifact(null)));
+	}
+
+	private static Artifact createArtifact(String classifier) {
+		return new DefaultArtifact("org.acme", "lib", VersionRange.createFromVersion("1.0"), "compile", "jar", classifier,
+				new DefaultArtifactHandler("jar"));
+	}
+}
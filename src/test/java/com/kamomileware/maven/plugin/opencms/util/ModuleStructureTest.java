@@ -0,0 +1,118 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.File;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Dependency;
+import org.codehaus.plexus.util.FileUtils;
+
+public class ModuleStructureTest extends TestCase {
+
+	// SHA-1 of "library content"
+	private static final String CHECKSUM = "4a86cfbc2233b48633eceb315f673d601c54f317";
+
+	private File directory;
+
+	private Artifact artifact;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("structure", "");
+		directory.delete();
+		directory.mkdirs();
+		artifact = new DefaultArtifact("org.acme", "lib", VersionRange.createFromVersion("1.0"), "compile", "jar", null,
+				new DefaultArtifactHandler("jar"));
+		File file = new File(directory, "lib-1.0.jar");
+		FileUtils.fileWrite(file.getPath(), "US-ASCII", "library content");
+		file.setLastModified(1000000000000L);
+		artifact.setFile(file);
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testComputesChecksum() throws Exception {
+		ModuleStructure structure = new ModuleStructure(Collections.singletonList(createDependency()), null);
+		structure.registerTargetFileName(artifact, "lib-1.0.jar");
+
+		assertEquals(CHECKSUM, structure.registerChecksum(artifact));
+		DependencyInfo info = structure.getDependencyInfo(artifact);
+		assertEquals(CHECKSUM, info.getChecksum());
+		assertEquals(artifact.getFile().length(), info.getFileLength());
+		assertEquals(artifact.getFile().lastModified(), info.getFileLastModified());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testTracksTransitiveDependencies() throws Exception {
+		ModuleStructure structure = new ModuleStructure(Collections.<Dependency> emptyList(), null);
+		structure.registerTargetFileName(artifact, "lib-1.0.jar");
+
+		assertEquals(CHECKSUM, structure.registerChecksum(artifact));
+		assertEquals("lib-1.0.jar", structure.getDependencyInfo(artifact).getTargetFileName());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testReadsRepositoryChecksumFile() throws Exception {
+		String other = "0123456789abcdef0123456789abcdef01234567";
+		File sha1 = new File(artifact.getFile().getPath() + ".sha1");
+		FileUtils.fileWrite(sha1.getPath(), "US-ASCII", other.toUpperCase() + "  lib-1.0.jar\n");
+		ModuleStructure structure = new ModuleStructure(Collections.singletonList(createDependency()), null);
+		structure.registerTargetFileName(artifact, "lib-1.0.jar");
+
+		assertEquals(other, structure.registerChecksum(artifact));
+
+		// older than the file, so not trusted
+		sha1.setLastModified(artifact.getFile().lastModified() - 1000);
+		assertEquals(CHECKSUM, structure.registerChecksum(artifact));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testReusesChecksumOfUnchangedFile() throws Exception {
+		String cached = "fedcba9876543210fedcba9876543210fedcba98";
+		ModuleStructure previous = new ModuleStructure(Collections.singletonList(createDependency()));
+		previous.registerTargetFileName(artifact, "lib-1.0.jar");
+		File file = artifact.getFile();
+		previous.getDependencyInfo(artifact).setChecksum(cached, file.length(), file.lastModified());
+
+		ModuleStructure structure = new ModuleStructure(Collections.singletonList(createDependency()), previous);
+		structure.registerTargetFileName(artifact, "lib-1.0.jar");
+		assertEquals(cached, structure.registerChecksum(artifact));
+
+		// touched since the previous build
+		file.setLastModified(file.lastModified() + 1000);
+		assertEquals(CHECKSUM, structure.registerChecksum(artifact));
+	}
+
+	private static Dependency createDependency() {
+		Dependency dependency = new Dependency();
+		dependency.setGroupId("org.acme");
+		dependency.setArtifactId("lib");
+		dependency.setVersion("1.0");
+		dependency.setType("jar");
+		dependency.setScope("compile");
+		return dependency;
+	}
+}
@@ -0,0 +1,65 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import junit.framework.TestCase;
+
+public class PathTrieTest extends TestCase {
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testFindNearestAncestor() throws Exception {
+		PathTrie<String> trie = new PathTrie<String>();
+		trie.put("system", "system");
+		trie.put("system/modules/m", "module");
+
+		// nested below the deepest registered path
+		PathTrie.Node<String> node = trie.findNearestAncestor("system/modules/m/lib/a.jar");
+		assertEquals("module", node.getValue());
+		assertEquals("system/modules/m".length(), node.getPathLength());
+		assertEquals("lib/a.jar", "system/modules/m/lib/a.jar".substring(node.getPathLength() + 1));
+
+		// a registered path is not its own ancestor
+		assertEquals("system", trie.findNearestAncestor("system/modules/m").getValue());
+		assertEquals("system", trie.findNearestAncestor("system/modules/other/a.txt").getValue());
+		assertEquals("system", trie.findNearestAncestor("system/modules").getValue());
+
+		// no registered ancestor
+		assertNull(trie.findNearestAncestor("system"));
+		assertNull(trie.findNearestAncestor("content/a.txt"));
+		assertNull(trie.findNearestAncestor("systems/a.txt"));
+		assertNull(trie.findNearestAncestor("a.txt"));
+		assertNull(trie.findNearestAncestor(""));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testRootLevelAndManyChildren() throws Exception {
+		PathTrie<Integer> trie = new PathTrie<Integer>();
+		for (int i = 0; i < 100; i++) {
+			trie.put("dir" + i, Integer.valueOf(i));
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf(i), trie.findNearestAncestor("dir" + i + "/file").getValue());
+		}
+		assertNull(trie.findNearestAncestor("dir100/file"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testIsEmpty() throws Exception {
+		PathTrie<String> trie = new PathTrie<String>();
+		assertTrue(trie.isEmpty());
+
+		trie.put("a/b", "b");
+		assertFalse(trie.isEmpty());
+		trie.put("a/b", "other");
+		trie.put("a/b", null);
+		assertTrue(trie.isEmpty());
+		assertNull(trie.findNearestAncestor("a/b/c"));
+	}
+}
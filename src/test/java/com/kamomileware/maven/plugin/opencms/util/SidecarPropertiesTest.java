@@ -0,0 +1,106 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class SidecarPropertiesTest extends TestCase {
+
+	private File directory;
+
+	private File sidecarDir;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("sidecars", "");
+		directory.delete();
+		sidecarDir = new File(directory, SidecarProperties.PROPERTIES_DIR_NAME);
+		sidecarDir.mkdirs();
+		FileUtils.fileWrite(new File(directory, "index.jsp").getPath(), "UTF-8", "<html/>");
+		new File(directory, "images").mkdir();
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testPerResourceFileWins() throws Exception {
+		write("_directory.properties", "index.jsp/Title.i=Consolidated\nindex.jsp/Description.i=Home page\n"
+				+ "__images/Title.i=Images\n");
+		write("index.jsp.properties", "Title.i=Home\n");
+
+		SidecarProperties sidecars = new SidecarProperties();
+		Properties props = sidecars.readProperties(new File(directory, "index.jsp"));
+
+		assertEquals("Home", props.getProperty("Title.i"));
+		assertEquals("Home page", props.getProperty("Description.i"));
+		assertEquals("Images", sidecars.readProperties(new File(directory, "images")).getProperty("Title.i"));
+		assertTrue(sidecars.readAcl(new File(directory, "index.jsp")).isEmpty());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testRepeatedReadKeepsConsolidatedValues() throws Exception {
+		write("_directory.acl", "index.jsp/ROLE.Users=+r/0\n");
+
+		SidecarProperties sidecars = new SidecarProperties();
+		File resource = new File(directory, "index.jsp");
+
+		assertEquals("+r/0", sidecars.readAcl(resource).getProperty("ROLE.Users"));
+		assertEquals("+r/0", sidecars.readAcl(resource).getProperty("ROLE.Users"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testNativeEncodedSidecar() throws Exception {
+		FileUtils.fileWrite(new File(sidecarDir, "index.jsp.properties").getPath(), "UTF-8",
+				"Title.i=Espa\u00f1a\nDescription.i=\\u00c1rbol\n");
+
+		Properties props = new SidecarProperties(Charset.forName("UTF-8")).readProperties(new File(directory, "index.jsp"));
+
+		assertEquals("Espa\u00f1a", props.getProperty("Title.i"));
+		assertEquals("\u00c1rbol", props.getProperty("Description.i"));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testConsolidatedRoundTrip() throws Exception {
+		Map<String, Properties> byName = new HashMap<String, Properties>();
+		Properties props = new Properties();
+		props.put("Title.i", " Espa\u00f1a = \u4e2d\u6587: #1!");
+		props.put("Multi line.s", "one\ntwo\\three");
+		byName.put("index.jsp", props);
+		Properties folder = new Properties();
+		folder.put("Title.i", "Images");
+		byName.put("__images", folder);
+
+		File file = new File(sidecarDir, "_directory.properties");
+		SidecarProperties.writeConsolidated(file, byName);
+
+		assertEquals(byName, SidecarProperties.readConsolidated(file, null));
+		assertEquals(byName, SidecarProperties.readConsolidated(file, Charset.forName("UTF-8")));
+	}
+
+	private void write(String name, String content) throws Exception {
+		FileUtils.fileWrite(new File(sidecarDir, name).getPath(), "ISO-8859-1", content);
+	}
+}
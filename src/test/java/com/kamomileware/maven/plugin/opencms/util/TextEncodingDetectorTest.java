@@ -0,0 +1,139 @@
+package com.kamomileware.maven.plugin.opencms.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.kamomileware.maven.plugin.opencms.util.TextEncodingDetector.TextEncoding;
+
+public class TextEncodingDetectorTest extends TestCase {
+
+	private File directory;
+
+	/** {@inheritDoc} */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("encodings", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	/** {@inheritDoc} */
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		super.tearDown();
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testScan() throws Exception {
+		assertEquals(TextEncoding.ASCII, TextEncodingDetector.scan(write("ascii", "title=Home\n".getBytes("US-ASCII"))));
+		assertEquals(TextEncoding.ASCII, TextEncodingDetector.scan(write("empty", new byte[0])));
+		assertEquals(TextEncoding.UTF_8, TextEncodingDetector.scan(write("utf8", "t=Espa\u00f1a \u20ac \ud83d\ude00".getBytes("UTF-8"))));
+		assertEquals(TextEncoding.UNKNOWN, TextEncodingDetector.scan(write("latin1", "t=Espa\u00f1a".getBytes("ISO-8859-1"))));
+		// overlong encoding and truncated sequence
+		assertEquals(TextEncoding.UNKNOWN, TextEncodingDetector.scan(write("overlong", new byte[] { 'a', (byte) 0xc0, (byte) 0xaf })));
+		assertEquals(TextEncoding.UNKNOWN, TextEncodingDetector.scan(write("truncated", new byte[] { 'a', (byte) 0xe2, (byte) 0x82 })));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testByteOrderMarks() throws Exception {
+		TextEncoding encoding = TextEncodingDetector.scan(write("bom8", new byte[] { (byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'a' }));
+		assertEquals(TextEncoding.UTF_8_BOM, encoding);
+		assertEquals(3, encoding.getBomLength());
+		assertEquals(Charset.forName("UTF-8"), encoding.getCharset(Charset.forName("ISO-8859-1")));
+
+		assertEquals(TextEncoding.UTF_16BE_BOM, TextEncodingDetector.scan(write("bom16be", new byte[] { (byte) 0xfe, (byte) 0xff, 0, 'a' })));
+		assertEquals(TextEncoding.UTF_16LE_BOM, TextEncodingDetector.scan(write("bom16le", new byte[] { (byte) 0xff, (byte) 0xfe, 'a', 0 })));
+
+		Charset configured = Charset.forName("ISO-8859-1");
+		assertEquals(configured, TextEncoding.UNKNOWN.getCharset(configured));
+		assertEquals(0, TextEncoding.UNKNOWN.getBomLength());
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testSequenceAcrossBuffers() throws Exception {
+		// a three byte sequence starting one byte before the end of the first buffer
+		byte[] content = new byte[65536 + 2];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = 'a';
+		}
+		content[65535] = (byte) 0xe2;
+		content[65536] = (byte) 0x82;
+		content[65537] = (byte) 0xac;
+		assertEquals(TextEncoding.UTF_8, TextEncodingDetector.scan(write("split", content)));
+
+		content[65537] = 'a';
+		assertEquals(TextEncoding.UNKNOWN, TextEncodingDetector.scan(write("split", content)));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testCachedDetections() throws Exception {
+		File cacheFile = new File(directory, "encodings.cache");
+		File file = write("cached", "t=Espa\u00f1a".getBytes("UTF-8"));
+		TextEncodingDetector detector = new TextEncodingDetector(cacheFile);
+		assertEquals(TextEncoding.UTF_8, detector.detect(file));
+		detector.save();
+		assertTrue(cacheFile.isFile());
+
+		// a cached detection is trusted while length and modification time hold
+		long lastModified = file.lastModified();
+		write("cached", "t=Espanaa".getBytes("US-ASCII"));
+		file.setLastModified(lastModified);
+		assertEquals(TextEncoding.UTF_8, new TextEncodingDetector(cacheFile).detect(file));
+
+		file.setLastModified(lastModified - 10000);
+		assertEquals(TextEncoding.ASCII, new TextEncodingDetector(cacheFile).detect(file));
+	}
+
+	/**
+	 * @throws Exception
+	 *             if any
+	 */
+	public void testConfiguredEncoding() throws Exception {
+		assertTrue(TextEncodingDetector.isAsciiCompatible(Charset.forName("ISO-8859-1")));
+		assertTrue(TextEncodingDetector.isAsciiCompatible(Charset.forName("UTF-8")));
+		assertFalse(TextEncodingDetector.isAsciiCompatible(Charset.forName("UTF-16LE")));
+		assertFalse(TextEncodingDetector.isAsciiCompatible(Charset.forName("UTF-16")));
+		assertFalse(TextEncodingDetector.isAsciiCompatible(Charset.forName("UTF-32BE")));
+
+		TextEncodingDetector detector = new TextEncodingDetector(null);
+		// "ti" in UTF-16LE has ASCII bytes only
+		File utf16 = write("utf16", "ti".getBytes("UTF-16LE"));
+		assertEquals(TextEncoding.ASCII, detector.detect(utf16, Charset.forName("ISO-8859-1")));
+		assertEquals(TextEncoding.UNKNOWN, detector.detect(utf16, Charset.forName("UTF-16LE")));
+		File utf8 = write("utf8", "t=Espa\u00f1a".getBytes("UTF-8"));
+		assertEquals(TextEncoding.UTF_8, detector.detect(utf8, Charset.forName("ISO-8859-1")));
+		assertEquals(TextEncoding.UNKNOWN, detector.detect(utf8, Charset.forName("UTF-32BE")));
+		// a byte order mark holds whatever the configured encoding
+		File bom = write("bom16", new byte[] { (byte) 0xff, (byte) 0xfe, 't', 0 });
+		assertEquals(TextEncoding.UTF_16LE_BOM, detector.detect(bom, Charset.forName("UTF-32BE")));
+	}
+
+	private File write(String name, byte[] content) throws Exception {
+		File file = new File(directory, name);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}